@@ -29,9 +29,9 @@ public class App {
             System.out.println("Word.loadStopWords(): incorrect return value (expected: true)" + canLoadStopWords);
         }
         // check if size of set stopWords is not equal to the number of words in the file
-        if (Word.stopWords.size() != 174) {
+        if (Word.getStopWordTable().size() != 174) {
             // throw exception
-            System.out.println("Word.loadStopWords(): incorrect number of stopWords loaded (expected: 174)" + Word.stopWords.size());
+            System.out.println("Word.loadStopWords(): incorrect number of stopWords loaded (expected: 174)" + Word.getStopWordTable().size());
         }
 
 
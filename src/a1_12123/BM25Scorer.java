@@ -0,0 +1,46 @@
+package engine;
+
+/**
+ * BM25Scorer scores a keyword by the Okapi BM25 formula: rare terms weigh more, and the weight of
+ * repeated terms saturates and is normalized by the length of the document
+ */
+public class BM25Scorer implements Scorer {
+
+    /**
+     * private attributes
+     */
+    private double k1;
+    private double b;
+
+    /**
+     * A constructor of class BM25Scorer with the usual parameters k1 = 1.2 and b = 0.75
+     */
+    public BM25Scorer() {
+        this(1.2, 0.75);
+    }
+
+    /**
+     * A constructor of class BM25Scorer
+     * @param k1 how fast the weight of a repeated term saturates
+     * @param b how much the length of the document matters, from 0 to 1
+     */
+    public BM25Scorer(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     *
+     * @return idf(term) * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength))
+     * @requires <pre> idf(term) = ln(1 + (N - df + 0.5) / (df + 0.5)), which stays positive
+     * even for terms found in most documents </pre>
+     */
+    @Override
+    public double score(CollectionStats stats, int termId, int frequency, int length) {
+        double documentFrequency = stats.getDocumentFrequency(termId);
+        double idf = Math.log(1 + (stats.getDocumentCount() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        double averageLength = stats.getAverageLength();
+        double norm = averageLength > 0 ? 1 - b + b * length / averageLength : 1;
+        return idf * frequency * (k1 + 1) / (frequency + k1 * norm);
+    }
+}
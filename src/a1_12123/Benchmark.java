@@ -0,0 +1,315 @@
+package engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark is a small performance harness for the hot paths of the engine:
+ * tokenizing, loading, matching, ranking and highlighting.
+ * Every benchmark is warmed up, then run for a fixed time; it reports the throughput,
+ * the bytes allocated per operation and the garbage collections during the measurement
+ */
+public class Benchmark {
+
+    /**
+     * how long each benchmark is warmed up and measured, in milliseconds
+     */
+    private static final long WARMUP_MILLIS = 1000;
+    private static final long MEASURE_MILLIS = 3000;
+
+    /**
+     * results are folded into this field so the JIT cannot drop the measured work
+     */
+    private static volatile int sink;
+
+    /**
+     * A benchmarked operation
+     */
+    interface Task {
+        /**
+         *
+         * @return any object derived from the work done, it is consumed by the harness
+         * @throws Exception
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     *
+     * @param name
+     * @param task
+     * @effects warm up and measure the task on the calling thread, then print one line of results
+     * @throws Exception if the task fails
+     */
+    static void measure(String name, Task task) throws Exception {
+        // warm up
+        long end = System.nanoTime() + WARMUP_MILLIS * 1_000_000L;
+        while (System.nanoTime() < end) {
+            consume(task.run());
+        }
+        // measure
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes();
+        long operations = 0;
+        long start = System.nanoTime();
+        end = start + MEASURE_MILLIS * 1_000_000L;
+        long now;
+        do {
+            consume(task.run());
+            operations++;
+            now = System.nanoTime();
+        } while (now < end);
+        double seconds = (now - start) / 1e9;
+        long bytes = allocatedBytes() - allocated;
+        System.out.printf("%-32s %14.1f ops/s %14.0f ns/op %14.0f B/op %6d gc %6d gc-ms%n",
+                name, operations / seconds, (now - start) / (double) operations,
+                bytes / (double) operations, gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    /**
+     *
+     * @param name
+     * @param threads the number of threads running the task at the same time
+     * @param task
+     * @effects <pre> warm up and measure the task on that many threads at once, then print
+     * the throughput of all threads together and the average latency </pre>
+     * @throws Exception if the task fails on any thread
+     */
+    static void measureParallel(String name, int threads, Task task) throws Exception {
+        long[] operations = new long[threads];
+        Exception[] failures = new Exception[threads];
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] window = new long[2];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    // warm up on every thread before the measurement starts
+                    long warm = System.nanoTime() + WARMUP_MILLIS * 1_000_000L;
+                    while (System.nanoTime() < warm) {
+                        consume(task.run());
+                    }
+                    ready.countDown();
+                    go.await();
+                    long count = 0;
+                    while (System.nanoTime() < window[1]) {
+                        consume(task.run());
+                        count++;
+                    }
+                    operations[id] = count;
+                } catch (Exception e) {
+                    failures[id] = e;
+                    ready.countDown();
+                }
+            });
+            workers[t].start();
+        }
+        ready.await();
+        window[0] = System.nanoTime();
+        window[1] = window[0] + MEASURE_MILLIS * 1_000_000L;
+        go.countDown();
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            if (failures[t] != null) {
+                throw failures[t];
+            }
+            total += operations[t];
+        }
+        double seconds = (System.nanoTime() - window[0]) / 1e9;
+        System.out.printf("%-32s %14.1f ops/s %14.0f ns/op %3d threads%n",
+                name, total / seconds, threads * seconds * 1e9 / Math.max(1, total), threads);
+    }
+
+    /**
+     *
+     * @param result
+     * @effects fold the result into the sink
+     */
+    static void consume(Object result) {
+        sink += result == null ? 0 : System.identityHashCode(result);
+    }
+
+    /**
+     *
+     * @return the bytes allocated so far by the calling thread, -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @return the number of garbage collections so far
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @return the time spent in garbage collections so far, in milliseconds
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     *
+     * @param size the number of documents of the corpus
+     * @effects run every benchmark against a synthetic corpus of that size
+     * @throws Exception if a benchmark fails
+     */
+    static void runAll(int size) throws Exception {
+        System.out.println("== corpus of " + size + " documents");
+        CorpusGenerator generator = new CorpusGenerator("docs", 42);
+        File corpus = generator.generate(System.getProperty("java.io.tmpdir") + File.separator
+                + "engine-corpus-" + size, size);
+
+        // tokenizing
+        String[] rawWords = new String[1024];
+        for (int i = 0; i < rawWords.length; i++) {
+            rawWords[i] = generator.nextWord();
+        }
+        measure("Word.createWord", () -> {
+            int total = 0;
+            for (String raw : rawWords) {
+                total += Word.createWord(raw).getText().length();
+            }
+            return total;
+        });
+        String content = generator.nextLine(2, 8) + "\n" + generator.nextLine(300, 301);
+        measure("new Doc (300 words)", () -> new Doc(content));
+
+        // loading
+        measure("Engine.loadDocs", () -> new Engine().loadDocs(corpus.getPath()));
+        int threads = Runtime.getRuntime().availableProcessors();
+        measure("Engine.loadDocs (" + threads + " threads)", () -> new Engine().loadDocs(corpus.getPath(), threads));
+
+        // matching and ranking
+        Engine engine = new Engine();
+        engine.loadDocs(corpus.getPath(), threads);
+        Doc[] docs = engine.getDocs();
+        System.out.println("index: " + engine.getIndexBytes() + " bytes of compressed postings");
+        Query query = new Query("object oriented system design");
+        measure("Query.matchAgainst (all docs)", () -> {
+            int total = 0;
+            for (Doc doc : docs) {
+                total += query.matchAgainst(doc).size();
+            }
+            return total;
+        });
+        measure("Engine.search", () -> engine.search(query));
+        measure("Engine.search (top 10)", () -> engine.search(query, 10));
+        measure("Engine.searchStream (first 10)", () -> engine.searchStream(query).limit(10).count());
+        // the same search with the metrics recording, the difference is their overhead
+        Metrics.setEnabled(true);
+        measure("Engine.search (metrics on)", () -> engine.search(query));
+        Metrics.setEnabled(false);
+        Metrics.reset();
+        Query phrase = new Query("\"object oriented\" system NEAR/5 design");
+        measure("Engine.search (phrase, NEAR/5)", () -> engine.search(phrase));
+        Query conjunctive = new Query("+object +oriented +system -design");
+        measure("Engine.search (+required -excluded)", () -> engine.search(conjunctive));
+        Query wildcard = new Query("obj* orient?d syst?m desig*");
+        measure("Engine.search (prefix*, wildcard?)", () -> engine.search(wildcard));
+        // misspelled keywords, parsed every time so the expansion through the trie is measured too
+        measure("Engine.search (exact, new Query)", () -> engine.search(new Query("object oriented system design")));
+        measure("Engine.search (fuzzy ~1)", () -> engine.search(new Query("objetc~1 orientd~1 sytem~1 desgin~1")));
+        measure("Engine.search (fuzzy ~2)", () -> engine.search(new Query("objetc~2 orientd~2 sytem~2 desgin~2")));
+        Engine scored = new Engine();
+        scored.loadDocs(corpus.getPath(), threads);
+        scored.setScorer(new BM25Scorer());
+        measure("Engine.search (BM25)", () -> scored.search(query));
+        measure("Engine.search (BM25, top 10)", () -> scored.search(query, 10));
+        Engine sharded = new Engine();
+        sharded.loadDocs(corpus.getPath(), threads);
+        sharded.setParallelThreshold(Math.max(2, size / (threads * 4)));
+        measure("Engine.search (sharded)", () -> sharded.search(query));
+        measure("Engine.search (sharded, top 10)", () -> sharded.search(query, 10));
+
+        // concurrent searches on the same engine, they share one snapshot and take no lock
+        for (int n = 1; n <= threads; n *= 2) {
+            measureParallel("Engine.search (concurrent)", n, () -> engine.search(query, 10));
+        }
+        // the same while another thread keeps publishing new snapshots
+        Engine refreshed = new Engine();
+        refreshed.loadDocs(corpus.getPath(), threads);
+        // touching one file makes every refresh read it again and publish a snapshot
+        File touched = corpus.listFiles()[0];
+        long modified = touched.lastModified();
+        AtomicInteger refreshes = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; !Thread.currentThread().isInterrupted(); i++) {
+                touched.setLastModified(modified + (i % 2) * 1000);
+                consume(refreshed.refresh(corpus.getPath()));
+                refreshes.incrementAndGet();
+            }
+            touched.setLastModified(modified);
+        });
+        writer.start();
+        try {
+            measureParallel("Engine.search (while refreshing)", threads, () -> refreshed.search(query, 10));
+        } finally {
+            writer.interrupt();
+            writer.join();
+        }
+        // the old versions of the touched file are compacted away, the index stays the size of a fresh load
+        System.out.println("index: " + refreshed.getIndexBytes() + " bytes after " + refreshes.get()
+                + " refreshes, " + engine.getIndexBytes() + " after loading");
+
+        // highlighting
+        List<Result> results = engine.search(query, 50);
+        measure("Result.htmlHighlight (50)", () -> {
+            List<String> html = new ArrayList<>();
+            for (Result result : results) {
+                html.add(result.htmlHighlight());
+            }
+            return html;
+        });
+        measure("Snippet.of (50, 30 words)", () -> {
+            List<String> snippets = new ArrayList<>();
+            for (Result result : results) {
+                snippets.add(Snippet.of(result, 30));
+            }
+            return snippets;
+        });
+        measure("HtmlRenderer.render (50)", () -> {
+            StringBuilder out = new StringBuilder();
+            HtmlRenderer.render(results, out);
+            return out.length();
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        // usage: Benchmark [corpus sizes...], for example: Benchmark 10000 100000 1000000
+        Word.loadStopWords("stopwords.txt");
+        if (args.length == 0) {
+            args = new String[]{"10000"};
+        }
+        for (String size : args) {
+            runAll(Integer.parseInt(size));
+        }
+    }
+}
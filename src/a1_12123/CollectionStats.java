@@ -0,0 +1,74 @@
+package engine;
+
+/**
+ * CollectionStats holds the statistics of the searchable documents that scoring needs:
+ * how many there are, their average length and the document frequency of every term.
+ * They are kept up to date while documents are added or removed, so scoring only reads arrays
+ */
+public final class CollectionStats {
+
+    /**
+     * statistics of no document
+     */
+    static final CollectionStats EMPTY = new CollectionStats(0, 0, new int[0]);
+
+    /**
+     * private attributes, none of them is changed after construction
+     */
+    private final int documentCount;
+    private final long totalLength;
+    private final int[] documentFrequency;
+
+    /**
+     * A constructor of class CollectionStats
+     * @param documentCount the number of documents, removed ones excluded
+     * @param totalLength the number of words of all these documents
+     * @param documentFrequency the number of these documents holding each term id, it must not be changed afterwards
+     */
+    CollectionStats(int documentCount, long totalLength, int[] documentFrequency) {
+        this.documentCount = documentCount;
+        this.totalLength = totalLength;
+        this.documentFrequency = documentFrequency;
+    }
+
+    /**
+     *
+     * @return the number of documents that can be found
+     */
+    public int getDocumentCount() {
+        return this.documentCount;
+    }
+
+    /**
+     *
+     * @return the average number of words of the title and the body of a document, 0 without documents
+     */
+    public double getAverageLength() {
+        return documentCount == 0 ? 0.0 : (double) totalLength / documentCount;
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the number of documents holding the term
+     */
+    public int getDocumentFrequency(int termId) {
+        return termId >= 0 && termId < documentFrequency.length ? documentFrequency[termId] : 0;
+    }
+
+    /**
+     *
+     * @return the number of words of all the documents
+     */
+    long getTotalLength() {
+        return this.totalLength;
+    }
+
+    /**
+     *
+     * @return the document frequency by term id, it must not be changed
+     */
+    int[] getDocumentFrequencies() {
+        return this.documentFrequency;
+    }
+}
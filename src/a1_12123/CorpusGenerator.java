@@ -0,0 +1,131 @@
+package engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * CorpusGenerator writes a synthetic corpus in the format of the docs folder:
+ * one file per document, a title line and a body line.
+ * The words are drawn from the sample documents with a skewed (Zipf-like) distribution,
+ * so common words such as "system" or "design" get long postings lists like in real text
+ */
+public class CorpusGenerator {
+
+    /**
+     * private attributes
+     */
+    private List<String> vocabulary;
+    private Random random;
+
+    /**
+     * A constructor of class CorpusGenerator
+     * @param sampleDir the folder of sample documents used as vocabulary
+     * @param seed the seed of the random generator, the same seed gives the same corpus
+     */
+    public CorpusGenerator(String sampleDir, long seed) {
+        this.vocabulary = loadVocabulary(sampleDir);
+        this.random = new Random(seed);
+    }
+
+    /**
+     *
+     * @param dirname
+     * @param count the number of documents to write
+     * @return the folder holding the corpus
+     * @effects <pre> write count documents named 0000001.txt, 0000002.txt... into the folder,
+     * nothing is written if the folder already holds that many documents </pre>
+     * @throws IOException if a file cannot be written
+     */
+    public File generate(String dirname, int count) throws IOException {
+        File dir = new File(dirname);
+        String[] existing = dir.list();
+        if (existing != null && existing.length == count) {
+            return dir;
+        }
+        Files.createDirectories(dir.toPath());
+        for (int i = 1; i <= count; i++) {
+            String content = nextLine(2, 8) + "\n" + nextLine(40, 400) + "\n";
+            File file = new File(dir, String.format("%07d.txt", i));
+            Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        }
+        return dir;
+    }
+
+    /**
+     *
+     * @param min
+     * @param max
+     * @return a line of min to max words (exclusive) separated by single spaces
+     */
+    public String nextLine(int min, int max) {
+        int size = min + random.nextInt(max - min);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(nextWord());
+        }
+        return line.toString();
+    }
+
+    /**
+     *
+     * @return a raw word of the vocabulary, the first words are the most frequent
+     */
+    public String nextWord() {
+        // squaring a uniform number skews the picks towards the start of the vocabulary
+        double u = random.nextDouble();
+        return vocabulary.get((int) (u * u * vocabulary.size()));
+    }
+
+    /**
+     *
+     * @param sampleDir
+     * @return the distinct raw words of the sample documents that Word.createWord() accepts
+     */
+    private static List<String> loadVocabulary(String sampleDir) {
+        Set<String> words = new LinkedHashSet<>();
+        File[] files = new File(sampleDir).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                    for (String raw : content.split("\\s+")) {
+                        try {
+                            Word.createWord(raw);
+                            if (!raw.isEmpty()) {
+                                words.add(raw);
+                            }
+                        } catch (StringIndexOutOfBoundsException e) {
+                            // skip the raw words the engine cannot parse
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (words.isEmpty()) {
+            words.add("system");
+            words.add("design");
+            words.add("object");
+        }
+        return new ArrayList<>(words);
+    }
+
+    public static void main(String[] args) throws IOException {
+        // usage: CorpusGenerator <output folder> <number of documents>
+        String dirname = args.length > 0 ? args[0] : "corpus";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        new CorpusGenerator("docs", 42).generate(dirname, count);
+        System.out.println(count + " documents in " + dirname);
+    }
+}
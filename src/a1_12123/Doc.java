@@ -1,36 +1,100 @@
 package engine;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Doc is the class to represent a document which has a title and a body.
- * The title and body of a document are lists of Word objects
+ * The title and body of a document are lists of Word objects.
+ * To keep documents small, a Doc only stores its raw text, the term id of each word
+ * and the offsets of each word in the raw text; Word objects are created when they are read
  */
 public class Doc {
     /**
      * private attributes
      */
-    private List<Word> title;
-    private List<Word> body;
     private String content;
+    // term ids of the words in the dictionary
+    private TermDictionary dictionary;
+    private int[] titleTerms;
+    private int[] bodyTerms;
+    // three offsets per word in the content: textStart, textEnd, end
+    private int[] titleOffsets;
+    private int[] bodyOffsets;
+    private int bodyStart;
 
     /**
      * A constructor for class Doc
      * @param content - raw text of a document (.txt files)
-     * @effects extract titles and body parts from the raw text
+     * @effects extract titles and body parts from the raw text, the words get term ids in a new dictionary
      */
     public Doc(String content) {
+        this(content, new TermDictionary());
+    }
+
+    /**
+     * A constructor for the documents of an Engine
+     * @param content - raw text of a document (.txt files)
+     * @param dictionary the dictionary of the engine
+     * @effects extract titles and body parts from the raw text
+     */
+    Doc(String content, TermDictionary dictionary) {
         this.content = content;
-        // count the lines of the document, split it into an array of lines
-        String[] lines = this.content.split("\n");
+        this.dictionary = dictionary;
+        // find the two lines of the document, like content.split("\n")
+        int titleEnd = content.indexOf('\n');
         // check if it has enough lines
-        if (lines.length != 2) {
+        if (titleEnd < 0) {
+            throw new IllegalArgumentException("Invalid document content. Expected two lines.");
+        }
+        int bodyEnd = content.indexOf('\n', titleEnd + 1);
+        if (bodyEnd < 0) {
+            bodyEnd = content.length();
+        }
+        // the body can only be followed by empty lines
+        boolean onlyEmptyLines = true;
+        for (int i = bodyEnd; i < content.length(); i++) {
+            if (content.charAt(i) != '\n') {
+                onlyEmptyLines = false;
+                break;
+            }
+        }
+        if (bodyEnd == titleEnd + 1 || !onlyEmptyLines) {
             throw new IllegalArgumentException("Invalid document content. Expected two lines.");
         }
         // get the title and the body
-        this.title = convertToWordList(lines[0]);
-        this.body = convertToWordList(lines[1]);
+        this.bodyStart = titleEnd + 1;
+        int titleSize = countWords(0, titleEnd);
+        this.titleTerms = new int[titleSize];
+        this.titleOffsets = new int[titleSize * 3];
+        convertToTerms(0, titleEnd, titleTerms, titleOffsets);
+        int bodySize = countWords(bodyStart, bodyEnd);
+        this.bodyTerms = new int[bodySize];
+        this.bodyOffsets = new int[bodySize * 3];
+        convertToTerms(bodyStart, bodyEnd, bodyTerms, bodyOffsets);
+    }
+
+    /**
+     * A constructor for documents read back from an IndexSegment, nothing is tokenized again
+     * @param content - raw text of the document
+     * @param dictionary the dictionary of the term ids
+     * @param bodyStart the position of the body in the content
+     * @param titleTerms
+     * @param titleOffsets
+     * @param bodyTerms
+     * @param bodyOffsets
+     */
+    Doc(String content, TermDictionary dictionary, int bodyStart, int[] titleTerms, int[] titleOffsets,
+        int[] bodyTerms, int[] bodyOffsets) {
+        this.content = content;
+        this.dictionary = dictionary;
+        this.bodyStart = bodyStart;
+        this.titleTerms = titleTerms;
+        this.titleOffsets = titleOffsets;
+        this.bodyTerms = bodyTerms;
+        this.bodyOffsets = bodyOffsets;
     }
 
     /**
@@ -38,7 +102,7 @@ public class Doc {
      * @return the document’s title as a list of Word objects.
      */
     public List<Word> getTitle(){
-        return this.title;
+        return new WordList(0, titleOffsets);
     }
 
     /**
@@ -46,7 +110,71 @@ public class Doc {
      * @return the document’s body as a list of Word objects.
      */
     public List<Word> getBody(){
-        return this.body;
+        return new WordList(bodyStart, bodyOffsets);
+    }
+
+    /**
+     *
+     * @return the dictionary of the term ids of the words
+     */
+    TermDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    /**
+     *
+     * @return the term ids of the title words, in order
+     */
+    int[] getTitleTerms() {
+        return this.titleTerms;
+    }
+
+    /**
+     *
+     * @return the term ids of the body words, in order
+     */
+    int[] getBodyTerms() {
+        return this.bodyTerms;
+    }
+
+    /**
+     *
+     * @return the raw text of the document
+     */
+    String getContent() {
+        return this.content;
+    }
+
+    /**
+     *
+     * @return the position of the body in the raw text
+     */
+    int getBodyStart() {
+        return this.bodyStart;
+    }
+
+    /**
+     *
+     * @return the number of words of the title and the body
+     */
+    int getLength() {
+        return titleTerms.length + bodyTerms.length;
+    }
+
+    /**
+     *
+     * @return the offsets of the title words, see the attributes
+     */
+    int[] getTitleOffsets() {
+        return this.titleOffsets;
+    }
+
+    /**
+     *
+     * @return the offsets of the body words, see the attributes
+     */
+    int[] getBodyOffsets() {
+        return this.bodyOffsets;
     }
 
     /**
@@ -62,21 +190,118 @@ public class Doc {
             return false;
         }
         Doc other = (Doc) o;
-        return title.equals(other.title) && body.equals(other.body);
+        if (dictionary == other.dictionary) {
+            // equal term ids of one dictionary mean equal words ignoring case
+            return Arrays.equals(titleTerms, other.titleTerms) && Arrays.equals(bodyTerms, other.bodyTerms);
+        }
+        // ids of different dictionaries can't be compared, compare their terms
+        return sameTerms(titleTerms, other, other.titleTerms) && sameTerms(bodyTerms, other, other.bodyTerms);
+    }
+
+    /**
+     *
+     * @return a hash of the terms of the title and the body, equal docs have equal hashes
+     */
+    @Override
+    public int hashCode() {
+        return 31 * hashTerms(titleTerms) + hashTerms(bodyTerms);
+    }
+
+    /**
+     *
+     * @param terms term ids of this document
+     * @param other
+     * @param otherTerms term ids of the other document
+     * @return whether both have the same terms in the same order
+     */
+    private boolean sameTerms(int[] terms, Doc other, int[] otherTerms) {
+        if (terms.length != otherTerms.length) {
+            return false;
+        }
+        for (int i = 0; i < terms.length; i++) {
+            if (!dictionary.getTerm(terms[i]).equals(other.dictionary.getTerm(otherTerms[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param terms term ids of this document
+     * @return a hash of the terms, not of the ids, which depend on the dictionary
+     */
+    private int hashTerms(int[] terms) {
+        int hash = 1;
+        for (int term : terms) {
+            hash = 31 * hash + dictionary.getTerm(term).hashCode();
+        }
+        return hash;
     }
 
     /**
      *
-     * @param text
-     * @return a list of Word objects from a string
+     * @param from
+     * @param to
+     * @return the number of words in the line [from, to) of the content
      */
-    private List<Word> convertToWordList(String text) {
-        List<Word> wordList = new ArrayList<>();
-        String[] words = text.split(" ");
-        for (String word : words) {
-            wordList.add(Word.createWord(word));
+    private int countWords(int from, int to) {
+        int count = 0;
+        Tokenizer tokens = new Tokenizer(content, from, to);
+        while (tokens.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param from
+     * @param to
+     * @param terms
+     * @param offsets
+     * @effects fill the term ids and the offsets of the words of the line [from, to) of the content
+     */
+    private void convertToTerms(int from, int to, int[] terms, int[] offsets) {
+        Tokenizer tokens = new Tokenizer(content, from, to);
+        int i = 0;
+        while (tokens.next()) {
+            // reject the same raw words as Word.createWord()
+            Tokenizer.checkToken(tokens.getStart(), tokens.getTextStart(), tokens.getTextEnd(), tokens.getEnd());
+            terms[i] = dictionary.getId(TermDictionary.fold(content, tokens.getTextStart(), tokens.getTextEnd()));
+            offsets[i * 3] = tokens.getTextStart();
+            offsets[i * 3 + 1] = tokens.getTextEnd();
+            offsets[i * 3 + 2] = tokens.getEnd();
+            i++;
+        }
+    }
+
+    /**
+     * A read-only view of the title or the body, each Word is created from the offsets when it is read
+     */
+    private class WordList extends AbstractList<Word> implements RandomAccess {
+        private int lineStart;
+        private int[] offsets;
+
+        WordList(int lineStart, int[] offsets) {
+            this.lineStart = lineStart;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public Word get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            // a word starts right after the separator that ends the previous word
+            int start = index == 0 ? lineStart : offsets[index * 3 - 1] + 1;
+            return Tokenizer.createWord(content, start, offsets[index * 3], offsets[index * 3 + 1], offsets[index * 3 + 2]);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length / 3;
         }
-        return wordList;
     }
 
 
@@ -0,0 +1,103 @@
+package engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DocReader reads the raw text of a document file through a FileChannel instead of a Scanner.
+ * Small files are read into a reusable direct buffer, large files are memory-mapped
+ */
+public class DocReader {
+
+    /**
+     * files larger than this number of bytes are memory-mapped
+     */
+    private static final int MAP_THRESHOLD = 1 << 16;
+
+    /**
+     * one direct buffer per loading thread, reused for every small file
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAP_THRESHOLD));
+
+    /**
+     *
+     * @param file
+     * @return the content of the document file as "title\nbody", ready for the Doc constructor
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file has no line break, like Doc(String)
+     */
+    public static String readContent(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size > MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = BUFFERS.get();
+                bytes.clear();
+                while (bytes.position() < size && channel.read(bytes) >= 0) {
+                    // keep reading until the whole file is in the buffer
+                }
+                bytes.flip();
+            }
+            return decode(bytes);
+        }
+    }
+
+    /**
+     *
+     * @param bytes the UTF-8 bytes of a document file, from position 0 to the limit
+     * @return the title and the body joined by a single '\n'
+     * @requires <pre> the boundary between the title and the body is found on the bytes,
+     * only the two lines are decoded and the line terminators are dropped like Scanner.nextLine() </pre>
+     */
+    static String decode(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        // find the end of the title
+        int newline = -1;
+        for (int i = 0; i < limit; i++) {
+            if (bytes.get(i) == '\n') {
+                newline = i;
+                break;
+            }
+        }
+        if (newline < 0) {
+            throw new IllegalArgumentException("Invalid document content. Expected two lines.");
+        }
+        // drop the line terminator at the end of the body
+        int bodyEnd = limit;
+        if (bodyEnd > newline + 1 && bytes.get(bodyEnd - 1) == '\n') {
+            bodyEnd--;
+            if (bodyEnd > newline + 1 && bytes.get(bodyEnd - 1) == '\r') {
+                bodyEnd--;
+            }
+        }
+        int titleEnd = newline;
+        if (titleEnd > 0 && bytes.get(titleEnd - 1) == '\r') {
+            titleEnd--;
+        }
+        if (titleEnd == newline) {
+            // the '\n' between the lines is kept, so the whole content is decoded at once
+            return decode(bytes, 0, bodyEnd);
+        }
+        return decode(bytes, 0, titleEnd) + "\n" + decode(bytes, newline + 1, bodyEnd);
+    }
+
+    /**
+     *
+     * @param bytes
+     * @param start
+     * @param end
+     * @return the UTF-8 text of the bytes from start (inclusive) to end (exclusive)
+     */
+    private static String decode(ByteBuffer bytes, int start, int end) {
+        ByteBuffer range = bytes.duplicate();
+        range.limit(end).position(start);
+        return StandardCharsets.UTF_8.decode(range).toString();
+    }
+}
@@ -2,10 +2,33 @@ package engine;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *  This class represents the search engine
@@ -13,16 +36,105 @@ import java.util.Scanner;
 public class Engine {
 
     /**
-     * private attribute
+     * the share of removed documents in a snapshot above which it is compacted, see publish()
      */
-    private List<Doc> docs;
+    private static final double COMPACT_RATIO = 0.25;
+
+    /**
+     * private attributes
+     */
+    private volatile Snapshot snapshot;
+    private boolean channelReader;
+    private ResultCache cache;
+    // ranks the results by score when set, otherwise by Result.compareTo()
+    private volatile Scorer scorer;
+    // searches over at least parallelThreshold documents are split into shards run on searchPool
+    private int parallelThreshold;
+    private ForkJoinPool searchPool;
+    // the file of each document and the document of each file, only used by writers
+    private List<SourceFile> sources;
+    private Map<String, Integer> docIdByPath;
 
     /**
      * Constructor
      */
     public Engine() {
-        // initialize the list of document -> avoid NullPointerException
-        this.docs = new ArrayList<>();
+        // start with an empty snapshot -> avoid NullPointerException
+        this.snapshot = Snapshot.empty();
+        this.parallelThreshold = Integer.MAX_VALUE;
+        this.searchPool = ForkJoinPool.commonPool();
+        this.sources = new ArrayList<>();
+        this.docIdByPath = new HashMap<>();
+    }
+
+    /**
+     *
+     * @param channelReader true to read the files with DocReader (FileChannel and direct buffers),
+     *                      false to read them with a Scanner
+     * @effects choose how loadDocs() reads the document files
+     */
+    public void setChannelReader(boolean channelReader) {
+        this.channelReader = channelReader;
+    }
+
+    /**
+     *
+     * @param cache the cache of query results, null to disable caching
+     * @effects make search() reuse the results of recent queries with the same normalized keywords
+     */
+    public void setResultCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     *
+     * @return the cache of query results, null if caching is disabled
+     */
+    public ResultCache getResultCache() {
+        return this.cache;
+    }
+
+    /**
+     *
+     * @param scorer the scoring of the results, for example a BM25Scorer; null ranks them by Result.compareTo()
+     * @effects <pre> make search() rank the results by decreasing score, then by the original
+     * order of the documents; the score of every result is kept in Result.getScore() </pre>
+     */
+    public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+        // cached results are ranked by the previous scorer
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     *
+     * @return the scoring of the results, null if they are ranked by Result.compareTo()
+     */
+    public Scorer getScorer() {
+        return this.scorer;
+    }
+
+    /**
+     *
+     * @param documents the smallest number of documents searched in parallel
+     * @effects <pre> make search() split the documents into shards of less than that many
+     * documents, rank every shard on the search pool and merge the results; smaller
+     * engines keep searching on the calling thread. The results do not change </pre>
+     * @requires documents > 1
+     */
+    public void setParallelThreshold(int documents) {
+        this.parallelThreshold = documents;
+    }
+
+    /**
+     *
+     * @param pool the pool running the shards of parallel searches, the common pool by default
+     * @effects choose where parallel searches run
+     */
+    public void setSearchPool(ForkJoinPool pool) {
+        this.searchPool = pool;
     }
 
     /**
@@ -32,61 +144,1136 @@ public class Engine {
      * @return the number of documents loaded
      */
     public int loadDocs(String dirname) {
+        return loadDocs(dirname, 1);
+    }
+
+    /**
+     *
+     * @effects loads the documents from the specific folder, reading, tokenizing and indexing
+     * the files on a pool of worker threads
+     * @param dirname
+     * @param threads the number of worker threads, 1 or less loads on the calling thread
+     * @return the number of documents loaded
+     * @requires <pre> the documents are added in the order of the files in the folder,
+     * exactly like the single-threaded load; they are all published at once after reading </pre>
+     */
+    public synchronized int loadDocs(String dirname, int threads) {
+        long start = Metrics.start();
         File folder = new File(dirname);
         File[] files = folder.listFiles();
         if (files == null) {
             return 0;
         }
+        List<LoadedDoc> loaded = readDocs(Arrays.asList(files), threads, snapshot.getDictionary());
+        Snapshot.Builder builder = new Snapshot.Builder(snapshot);
+        for (LoadedDoc doc : loaded) {
+            addDoc(builder, doc);
+        }
+        publish(builder);
+        Metrics.count(Metrics.DOCS_LOADED, loaded.size());
+        Metrics.LOAD_DOCS.recordSince(start);
+        return loaded.size();
+    }
 
-        int count = 0;
+    /**
+     *
+     * @param dirname
+     * @return the number of documents added, updated or removed
+     * @effects <pre> bring the engine up to date with the folder: only the files that are new,
+     * or whose size or modification time changed, are read again; the documents of deleted
+     * files are removed. All the changes are applied at once, so a concurrent search sees
+     * either none or all of them. An updated document moves to the end of getDocs().
+     * A file that is not a valid document, like one still being written, keeps its previous
+     * document, the other changes are applied and the file is read again by the next refresh </pre>
+     */
+    public int refresh(String dirname) {
+        return refresh(dirname, 1);
+    }
+
+    /**
+     *
+     * @param dirname
+     * @param threads the number of worker threads used to read the changed files
+     * @return the number of documents added, updated or removed
+     * @effects the same as refresh(dirname), reading the changed files on a pool of worker threads
+     */
+    public synchronized int refresh(String dirname, int threads) {
+        File[] files = new File(dirname).listFiles();
+        if (files == null) {
+            files = new File[0];
+        }
+        // find the new and the changed files, writers are serialized so docIdByPath is stable
+        List<File> changed = new ArrayList<>();
+        Set<String> present = new HashSet<>();
         for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            SourceFile source = SourceFile.of(file);
+            present.add(source.getPath());
+            Integer docId = docIdByPath.get(source.getPath());
+            if (docId == null || !sources.get(docId).sameVersion(source)) {
+                changed.add(file);
+            }
+        }
+        // find the removed files of this folder
+        String folder = new File(dirname).getAbsolutePath();
+        List<String> removed = new ArrayList<>();
+        for (String path : docIdByPath.keySet()) {
+            if (folder.equals(new File(path).getParent()) && !present.contains(path)) {
+                removed.add(path);
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        // searches go on with the current snapshot meanwhile
+        List<LoadedDoc> loaded = readDocs(changed, threads, snapshot.getDictionary());
+        Snapshot.Builder builder = new Snapshot.Builder(snapshot);
+        for (String path : removed) {
+            builder.delete(docIdByPath.remove(path));
+        }
+        for (LoadedDoc doc : loaded) {
+            Integer old = docIdByPath.get(doc.source.getPath());
+            if (old != null) {
+                builder.delete(old);
+            }
+            addDoc(builder, doc);
+        }
+        publish(builder);
+        Metrics.count(Metrics.DOCS_LOADED, loaded.size());
+        return loaded.size() + removed.size();
+    }
+
+    /**
+     *
+     * @param files
+     * @param threads the number of worker threads, 1 or less reads on the calling thread
+     * @param dictionary the dictionary of the engine, it gets the new words
+     * @return the documents read from the files and their postings, in the order of the files
+     */
+    private List<LoadedDoc> readDocs(List<File> files, int threads, TermDictionary dictionary) {
+        List<LoadedDoc> loaded = new ArrayList<>();
+        if (threads <= 1) {
+            for (File file : files) {
+                LoadedDoc doc = readDoc(file, dictionary);
+                if (doc != null) {
+                    loaded.add(doc);
+                }
+            }
+            return loaded;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // submit every file, the futures keep the order of the files
+            List<Future<LoadedDoc>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(pool.submit(() -> readDoc(file, dictionary)));
+            }
+            for (Future<LoadedDoc> future : futures) {
+                LoadedDoc doc = future.get();
+                if (doc != null) {
+                    loaded.add(doc);
+                }
+            }
+            return loaded;
+        } catch (ExecutionException e) {
+            // rethrow the failure of a worker as if it happened on this thread
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading documents", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @param dictionary the dictionary of the engine
+     * @return <pre> the document stored in the file with its postings, null if it is not a readable file
+     * or not a valid document; the failure is counted as a load error </pre>
+     */
+    private LoadedDoc readDoc(File file, TermDictionary dictionary) {
+        if (!file.isFile()) {
+            return null;
+        }
+        // record the version of the file before reading it, a later edit is then seen as a change
+        SourceFile source = SourceFile.of(file);
+        String content = null;
+        if (channelReader) {
+            try {
+                content = DocReader.readContent(file);
+            } catch (IOException | IllegalArgumentException e) {
+                Metrics.count(Metrics.LOAD_ERRORS, 1);
+                e.printStackTrace();
+            }
+        } else {
             String[] lines = new String[2];
-            String content = "";
-            if (file.isFile()) {
-                try {
-                    Scanner reader = new Scanner(file);
-                    // add two lines into content of the doc
-                    while (reader.hasNext()) {
-                        for (int i = 0; i < lines.length; i++) {
-                            lines[i] = reader.nextLine();
-                        }
+            try (Scanner reader = new Scanner(file)) {
+                // add two lines into content of the doc
+                while (reader.hasNext()) {
+                    for (int i = 0; i < lines.length; i++) {
+                        lines[i] = reader.nextLine();
                     }
-                    content += lines[0] + "\n" + lines[1];
-                    Doc doc = new Doc(content);
-                    docs.add(doc);
-                    count++;
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
                 }
+                content = lines[0] + "\n" + lines[1];
+            } catch (FileNotFoundException | NoSuchElementException e) {
+                // a file with a missing line, maybe still being written, is skipped
+                Metrics.count(Metrics.LOAD_ERRORS, 1);
+                e.printStackTrace();
             }
         }
-        return count;
+        if (content == null) {
+            return null;
+        }
+        // only the tokenizing and indexing are timed, not the reading of the file
+        long start = Metrics.start();
+        Doc doc;
+        try {
+            doc = new Doc(content, dictionary);
+        } catch (IllegalArgumentException e) {
+            // not a document of two lines, skip it like a file that can't be read
+            Metrics.count(Metrics.LOAD_ERRORS, 1);
+            e.printStackTrace();
+            return null;
+        }
+        LoadedDoc loaded = new LoadedDoc(doc, Index.analyze(doc), source);
+        Metrics.TOKENIZE.recordSince(start);
+        return loaded;
+    }
+
+    /**
+     *
+     * @param builder the next snapshot
+     * @param doc a document read from a file
+     * @effects index the document under its position in the next snapshot and append it
+     */
+    private void addDoc(Snapshot.Builder builder, LoadedDoc doc) {
+        int docId = builder.nextDocId();
+        builder.getIndex().addPostings(docId, doc.postings);
+        builder.addDoc(doc.doc);
+        sources.add(doc.source);
+        docIdByPath.put(doc.source.getPath(), docId);
+    }
+
+    /**
+     *
+     * @param builder the next snapshot
+     * @effects <pre> make the next snapshot the one searches use, with a single volatile write,
+     * and remove the cached results, they do not know the latest documents. When more than
+     * COMPACT_RATIO of its documents are removed, the snapshot is compacted first, so a folder
+     * refreshed all day keeps the memory of its live documents </pre>
+     */
+    private void publish(Snapshot.Builder builder) {
+        Snapshot next = builder.build();
+        if (next.getDeleted().cardinality() > next.size() * COMPACT_RATIO) {
+            next = compact(next);
+        }
+        snapshot = next;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     *
+     * @param next
+     * @return the snapshot without its removed documents, see Snapshot.compact()
+     * @effects number the files of the remaining documents again, like their documents
+     */
+    private Snapshot compact(Snapshot next) {
+        List<SourceFile> live = new ArrayList<>();
+        docIdByPath.clear();
+        for (int docId = 0; docId < next.size(); docId++) {
+            if (!next.isDeleted(docId)) {
+                docIdByPath.put(sources.get(docId).getPath(), live.size());
+                live.add(sources.get(docId));
+            }
+        }
+        sources = live;
+        return next.compact();
+    }
+
+    /**
+     * A document read from a file together with its postings
+     */
+    private static class LoadedDoc {
+        private Doc doc;
+        private Map<Integer, Posting> postings;
+        private SourceFile source;
+
+        LoadedDoc(Doc doc, Map<Integer, Posting> postings, SourceFile source) {
+            this.doc = doc;
+            this.postings = postings;
+            this.source = source;
+        }
+    }
+
+    /**
+     *
+     * @param path the file of the index segment
+     * @param dirname the folder the documents were loaded from
+     * @effects <pre> write the documents and the index to a binary segment that loadIndex() can read
+     * on the next start, together with a fingerprint of the folder; removed documents are left out.
+     * The fingerprint is made of the sizes and modification times the files had when their documents
+     * were read, so a file edited since then makes the segment stale. The other files of the folder,
+     * which are not documents, count as they are now, and the segment itself is left out </pre>
+     * @throws IOException if the segment cannot be written
+     */
+    public synchronized void saveIndex(String path, String dirname) throws IOException {
+        Snapshot current = snapshot;
+        // the files of the folder as they were read, the latest document of each file
+        String folder = new File(dirname).getAbsolutePath();
+        Map<String, SourceFile> read = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : docIdByPath.entrySet()) {
+            if (folder.equals(new File(entry.getKey()).getParent())) {
+                read.put(entry.getKey(), sources.get(entry.getValue()));
+            }
+        }
+        IndexSegment.write(Paths.get(path), Arrays.asList(current.getDocs()), sources, current.getDeleted(),
+                current.getIndex(), IndexSegment.fingerprint(dirname, read, Paths.get(path)));
+    }
+
+    /**
+     *
+     * @param path the file of the index segment
+     * @param dirname the folder the documents were loaded from
+     * @effects load the documents and their postings from a segment written by saveIndex(),
+     * without reading or tokenizing the document files
+     * @return <pre> the number of documents loaded, -1 if the segment is missing, corrupted,
+     * or stale because the files of the folder changed; then loadDocs() must be used </pre>
+     */
+    public synchronized int loadIndex(String path, String dirname) {
+        try {
+            IndexSegment segment = IndexSegment.read(Paths.get(path),
+                    IndexSegment.fingerprint(dirname, Collections.emptyMap(), Paths.get(path)),
+                    snapshot.getDictionary());
+            if (segment == null) {
+                return -1;
+            }
+            Snapshot.Builder builder = new Snapshot.Builder(snapshot);
+            segment.addTo(builder.getIndex(), builder.nextDocId());
+            for (Doc doc : segment.getDocs()) {
+                builder.addDoc(doc);
+            }
+            for (SourceFile source : segment.getSources()) {
+                docIdByPath.put(source.getPath(), sources.size());
+                sources.add(source);
+            }
+            publish(builder);
+            return segment.getDocs().size();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     *
+     * @return the number of bytes of the compressed postings of the current index
+     */
+    long getIndexBytes() {
+        return snapshot.getIndex().getEncodedBytes();
     }
 
     /**
      *
-     * @return an array of documents in the original order
+     * @return an array of documents in the original order, without the removed ones
      */
     public Doc[] getDocs() {
-        return docs.toArray(new Doc[0]);
+        Snapshot current = snapshot;
+        List<Doc> live = new ArrayList<>();
+        for (int docId = 0; docId < current.size(); docId++) {
+            if (!current.isDeleted(docId)) {
+                live.add(current.getDoc(docId));
+            }
+        }
+        return live.toArray(new Doc[0]);
     }
 
     /**
      * perform the search function of the engine
      * @param q
-     * @return a list of sorted search results
+     * @return a list of sorted search results, only for the documents holding at least one keyword
      */
     public List<Result> search(Query q) {
+        long start = Metrics.start();
+        List<Result> results = searchAll(q);
+        Metrics.count(Metrics.RESULTS_RETURNED, results.size());
+        Metrics.SEARCH.recordSince(start);
+        return results;
+    }
+
+    /**
+     *
+     * @param q
+     * @return the results of search(q)
+     */
+    private List<Result> searchAll(Query q) {
+        // the whole search works on one snapshot, cached results are tagged with its version
+        Snapshot current = snapshot;
+        Scorer scoring = scorer;
+        List<String> key = cacheKey(q);
+        if (key != null) {
+            List<Result> cached = cache.get(key, current.getVersion());
+            if (cached != null) {
+                return rebind(cached, q, cached.size());
+            }
+        }
+        List<Result> results;
+        if (current.size() >= parallelThreshold) {
+            results = searchPool.invoke(new SearchShard(current, q, scoring, ranking(scoring), 0, current.size(),
+                    Integer.MAX_VALUE, parallelThreshold));
+        } else {
+            results = new ArrayList<>();
+            int[] termIds = scoringTermIds(current, q, scoring);
+            MatchScan scan = new MatchScan(current, q, 0, current.size());
+            for (List<Match> matches = scan.next(); matches != null; matches = scan.next()) {
+                results.add(newResult(current, q, scoring, termIds, scan.docId(), matches));
+            }
+            scan.count();
+            long start = Metrics.start();
+            if (scoring == null) {
+                results.sort(Result::compare);
+            } else {
+                results.sort((r1, r2) -> compareScored(r2, r1));
+            }
+            Metrics.RANK.recordSince(start);
+        }
+        if (key != null) {
+            cache.put(key, new ArrayList<>(results), current.getVersion());
+        }
+        return results;
+    }
+
+    /**
+     * perform the search function of the engine, keeping only the k best results
+     * @param q
+     * @param k the maximum number of results
+     * @return <pre> the k best results of search(q), the best first: with a scorer they are the first k
+     * of search(q); without one they are ranked by decreasing Result.compareTo() and then in the original
+     * order of the documents, while search(q) lists them from the lowest </pre>
+     * @requires <pre> the results are ranked in a bounded heap of size k, so ranking costs
+     * O(n log k) instead of sorting every result </pre>
+     */
+    public List<Result> search(Query q, int k) {
+        long start = Metrics.start();
+        List<Result> results = searchTop(q, k);
+        Metrics.count(Metrics.RESULTS_RETURNED, results.size());
+        Metrics.SEARCH.recordSince(start);
+        return results;
+    }
+
+    /**
+     *
+     * @param q
+     * @param k
+     * @return the results of search(q, k)
+     */
+    private List<Result> searchTop(Query q, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        Snapshot current = snapshot;
+        Scorer scoring = scorer;
+        // reuse the full ranking of the same query if it is cached
+        List<String> key = cacheKey(q);
+        if (key != null) {
+            List<Result> cached = cache.get(key, current.getVersion());
+            if (cached != null) {
+                if (scoring == null) {
+                    // the cached ranking lists the lowest first
+                    cached = new ArrayList<>(cached);
+                    cached.sort(best(scoring).reversed());
+                }
+                return rebind(cached, q, k);
+            }
+        }
+        if (current.size() >= parallelThreshold) {
+            return searchPool.invoke(new SearchShard(current, q, scoring, best(scoring), 0, current.size(), k,
+                    parallelThreshold));
+        }
+        return rankShard(current, q, scoring, best(scoring), 0, current.size(), k);
+    }
+
+    /**
+     * stream the results of a search as they are found
+     * @param q
+     * @return <pre> the results of search(q) in the original order of the documents instead of
+     * ranked, each with its score when there is a scorer </pre>
+     * @requires <pre> the stream is lazy: a document is only visited when the next result is pulled,
+     * so a consumer that stops after n results (limit(n), findFirst(), or an iterator it drops)
+     * stops the scan there, and no more than one result is held at a time. The stream searches
+     * the documents of the engine when it is created and does not use the result cache </pre>
+     */
+    public Stream<Result> searchStream(Query q) {
+        Spliterator<Result> results = Spliterators.spliteratorUnknownSize(new ResultIterator(snapshot, q, scorer),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(results, false);
+    }
+
+    /**
+     * publish the results of a search to reactive subscribers
+     * @param q
+     * @param executor runs the scans of the subscribers
+     * @return <pre> a publisher of the results of searchStream(q); every subscriber gets its own scan,
+     * which only visits documents while the subscriber has requested more results and stops
+     * for good when it cancels </pre>
+     */
+    public Flow.Publisher<Result> searchPublisher(Query q, Executor executor) {
+        return new ResultPublisher(() -> new ResultIterator(snapshot, q, scorer), executor);
+    }
+
+    /**
+     * ResultIterator turns the matches found by a MatchScan over every document into results,
+     * finding the next one only when it is asked for
+     */
+    private static class ResultIterator implements Iterator<Result> {
+        private Snapshot current;
+        private Query q;
+        private Scorer scoring;
+        private int[] termIds;
+        private MatchScan scan;
+        // the result of the next document, null if it is not found yet or after the last one
+        private Result next;
+        private boolean done;
+
+        ResultIterator(Snapshot current, Query q, Scorer scoring) {
+            this.current = current;
+            this.q = q;
+            this.scoring = scoring;
+            this.termIds = scoringTermIds(current, q, scoring);
+            this.scan = new MatchScan(current, q, 0, current.size());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                List<Match> matches = scan.next();
+                scan.count();
+                if (matches == null) {
+                    done = true;
+                } else {
+                    next = newResult(current, q, scoring, termIds, scan.docId(), matches);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Result result = next;
+            next = null;
+            Metrics.count(Metrics.RESULTS_RETURNED, 1);
+            return result;
+        }
+    }
+
+    /**
+     *
+     * @param current the snapshot to search
+     * @param q
+     * @param scoring the scorer of the search, null to leave the score at 0
+     * @param order the order of the results, see ranking() and best()
+     * @param from the first docId of the shard
+     * @param to the docId after the last one of the shard
+     * @param k the maximum number of results
+     * @return the first k results of the documents of the shard, in the order
+     */
+    private static List<Result> rankShard(Snapshot current, Query q, Scorer scoring, Comparator<Result> order,
+                                          int from, int to, int k) {
+        // the worst of the kept results is on top of the heap
+        PriorityQueue<Result> best = new PriorityQueue<>(Math.min(k, 64), order);
+        int[] termIds = scoringTermIds(current, q, scoring);
+        MatchScan scan = new MatchScan(current, q, from, to);
+        // the time spent in the heap, the scan in between is not ranking
+        long ranking = 0;
+        for (List<Match> matches = scan.next(); matches != null; matches = scan.next()) {
+            Result result = newResult(current, q, scoring, termIds, scan.docId(), matches);
+            long offered = Metrics.start();
+            if (best.size() < k) {
+                best.add(result);
+            } else if (order.compare(result, best.peek()) > 0) {
+                best.poll();
+                best.add(result);
+            }
+            ranking += Metrics.elapsed(offered);
+        }
+        scan.count();
+        long start = Metrics.start();
+        List<Result> results = new ArrayList<>(best);
+        results.sort(order.reversed());
+        if (start != 0) {
+            Metrics.RANK.record(ranking + Metrics.elapsed(start));
+        }
+        return results;
+    }
+
+    /**
+     *
+     * @param first results in the order
+     * @param second results of other documents, in the order
+     * @param order the order of the results, see ranking() and best()
+     * @param k the maximum number of results
+     * @return the first k results of both lists, in the order
+     */
+    private static List<Result> mergeRanked(List<Result> first, List<Result> second, Comparator<Result> order, int k) {
+        List<Result> merged = new ArrayList<>(Math.min(k, first.size() + second.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < k && (i < first.size() || j < second.size())) {
+            if (j == second.size() || i < first.size() && order.compare(first.get(i), second.get(j)) > 0) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * SearchShard ranks the documents of a range of docIds, splitting it in halves
+     * until the shards are smaller than the threshold, then merging the results of the halves
+     */
+    private static class SearchShard extends RecursiveTask<List<Result>> {
+        private static final long serialVersionUID = 1L;
+
+        private Snapshot current;
+        private Query q;
+        private Scorer scoring;
+        private Comparator<Result> order;
+        private int from;
+        private int to;
+        private int k;
+        private int threshold;
+
+        SearchShard(Snapshot current, Query q, Scorer scoring, Comparator<Result> order, int from, int to, int k,
+                    int threshold) {
+            this.current = current;
+            this.q = q;
+            this.scoring = scoring;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected List<Result> compute() {
+            if (to - from < threshold) {
+                return rankShard(current, q, scoring, order, from, to, k);
+            }
+            int middle = (from + to) >>> 1;
+            SearchShard left = new SearchShard(current, q, scoring, order, from, middle, k, threshold);
+            left.fork();
+            List<Result> right = new SearchShard(current, q, scoring, order, middle, to, k, threshold).compute();
+            List<Result> first = left.join();
+            long start = Metrics.start();
+            List<Result> merged = mergeRanked(first, right, order, k);
+            Metrics.RANK.recordSince(start);
+            return merged;
+        }
+    }
+
+    /**
+     *
+     * @param q
+     * @return the cache key of the query, null if there is no cache or the query cannot use it
+     * @requires <pre> a query repeating a keyword counts every repeat as a match, so its
+     * results differ from the ones of its normalized keywords and it is not cached; neither
+     * is a query with conditions (see Query), its keywords do not tell its results </pre>
+     */
+    private List<String> cacheKey(Query q) {
+        if (cache == null) {
+            return null;
+        }
+        List<String> key = ResultCache.key(q);
+        if (key.size() != q.getKeywords().size() || q.hasConditions()) {
+            return null;
+        }
+        return key;
+    }
+
+    /**
+     *
+     * @param cached the cached results of a query with the same normalized keywords
+     * @param q
+     * @param limit the maximum number of results
+     * @return <pre> a copy of the first results, whose matches hold the keywords of q
+     * (they may differ in case from the ones of the cached query) </pre>
+     */
+    private List<Result> rebind(List<Result> cached, Query q, int limit) {
+        // the keywords of q by normalized text
+        Map<String, Word> keywords = new HashMap<>();
+        for (Word keyword : q.getKeywords()) {
+            keywords.put(TermDictionary.fold(keyword.getText()), keyword);
+        }
+        // the keyword of q for each word text of the cached matches
+        Map<String, Word> byCachedText = new HashMap<>();
         List<Result> results = new ArrayList<>();
-        for (Doc doc : docs) {
-            List<Match> matches = q.matchAgainst(doc);
-            Result result = new Result(doc, matches);
-            results.add(result);
+        for (int i = 0; i < limit && i < cached.size(); i++) {
+            Result result = cached.get(i);
+            List<Match> matches = new ArrayList<>();
+            for (Match match : result.getMatches()) {
+                Word keyword = byCachedText.computeIfAbsent(match.getWord().getText(),
+                        text -> keywords.get(TermDictionary.fold(text)));
+                matches.add(new Match(result.getDoc(), keyword, match.getFreq(), match.getFirstIndex(),
+                        match.getTitlePositions(), match.getBodyPositions()));
+            }
+            results.add(new Result(result.getDoc(), matches, result.getDocId(), result.getScore()));
         }
-        results.sort(Result::compareTo);
         return results;
     }
 
+    /**
+     *
+     * @param r1
+     * @param r2
+     * @return <pre> a positive number if r1 comes before r2 in the order of search(),
+     * that is by Result.compareTo() and then by the original order of the documents </pre>
+     */
+    private static int compareRanked(Result r1, Result r2) {
+        int comp = Result.compare(r1, r2);
+        if (comp != 0) {
+            return -comp;
+        }
+        return Integer.compare(r2.getDocId(), r1.getDocId());
+    }
+
+    /**
+     *
+     * @param r1
+     * @param r2
+     * @return <pre> a positive number if r1 comes before r2 in the order of search(q, k) without a scorer,
+     * that is by decreasing Result.compareTo() and then by the original order of the documents </pre>
+     */
+    private static int compareBest(Result r1, Result r2) {
+        int comp = Result.compare(r1, r2);
+        if (comp != 0) {
+            return comp;
+        }
+        return Integer.compare(r2.getDocId(), r1.getDocId());
+    }
+
+    /**
+     *
+     * @param r1
+     * @param r2
+     * @return <pre> a positive number if r1 comes before r2 in the order of a scored search(),
+     * that is by decreasing score and then by the original order of the documents </pre>
+     */
+    private static int compareScored(Result r1, Result r2) {
+        int comp = Double.compare(r1.getScore(), r2.getScore());
+        if (comp != 0) {
+            return comp;
+        }
+        return Integer.compare(r2.getDocId(), r1.getDocId());
+    }
+
+    /**
+     *
+     * @param scoring the scorer of the search, null to rank by Result.compareTo()
+     * @return the order of search(), positive if the first result comes first
+     */
+    private static Comparator<Result> ranking(Scorer scoring) {
+        if (scoring == null) {
+            return Engine::compareRanked;
+        }
+        return Engine::compareScored;
+    }
+
+    /**
+     *
+     * @param scoring the scorer of the search, null to rank by Result.compareTo()
+     * @return the order of search(q, k), the best result first, positive if the first result comes first
+     */
+    private static Comparator<Result> best(Scorer scoring) {
+        if (scoring == null) {
+            return Engine::compareBest;
+        }
+        return Engine::compareScored;
+    }
+
+    /**
+     *
+     * @param current the snapshot to search
+     * @param q
+     * @param scoring the scorer of the search, null to leave the score at 0
+     * @param termIds the term ids scoring the keywords, see scoringTermIds()
+     * @param docId
+     * @param matches the matches of the document
+     * @return the result of the document, with its score
+     * @requires <pre> every match holds one of the keywords of q, its term id is found by
+     * identity among the few keywords, so scoring costs a few array reads per match </pre>
+     */
+    private static Result newResult(Snapshot current, Query q, Scorer scoring, int[] termIds, int docId,
+                                    List<Match> matches) {
+        Doc doc = current.getDoc(docId);
+        double score = 0;
+        if (scoring != null) {
+            List<Word> keywords = q.getKeywords();
+            int length = doc.getLength();
+            for (Match match : matches) {
+                int i = 0;
+                while (keywords.get(i) != match.getWord()) {
+                    i++;
+                }
+                score += scoring.score(current.getStats(), termIds[i], match.getFreq(), length);
+            }
+        }
+        return new Result(doc, matches, docId, score);
+    }
+
+    /**
+     *
+     * @param current the snapshot to search
+     * @param q
+     * @param scoring the scorer of the search, null if there is none
+     * @return <pre> the term id of every keyword, a wildcard or a fuzzy keyword is scored like
+     * the most common word it matches; null without a scorer </pre>
+     */
+    private static int[] scoringTermIds(Snapshot current, Query q, Scorer scoring) {
+        if (scoring == null) {
+            return null;
+        }
+        int[] termIds = q.getTermIds(current.getDictionary());
+        if (!q.hasExpansions()) {
+            return termIds;
+        }
+        termIds = termIds.clone();
+        int[][] expanded = q.getExpansions(current.getDictionary());
+        CollectionStats stats = current.getStats();
+        for (int i = 0; i < termIds.length; i++) {
+            if (expanded[i] == null) {
+                continue;
+            }
+            for (int termId : expanded[i]) {
+                if (termIds[i] < 0 || stats.getDocumentFrequency(termId) > stats.getDocumentFrequency(termIds[i])) {
+                    termIds[i] = termId;
+                }
+            }
+        }
+        return termIds;
+    }
+
+    /**
+     * MatchScan visits the documents of a range holding the keywords of a query in increasing
+     * docId order and finds their matches one document at a time, so a caller that stops early
+     * leaves the rest of the postings unread
+     * @requires <pre> only the documents holding at least one keyword are visited, their matches
+     * are taken from the index and equal the ones of Query.matchAgainst(); removed documents
+     * are skipped. Without required words the postings of the keywords are merged with a heap;
+     * with required words only their intersection is visited, found by advancing the cursors
+     * from the shortest list, which skips whole blocks of the compressed postings, so common
+     * keywords do not make every document visited. Positions are only decoded for the documents kept.
+     * A wildcard or a fuzzy keyword gets the union of the postings of the words it matches in the range </pre>
+     */
+    private static class MatchScan {
+        private Snapshot current;
+        private Query q;
+        private int to;
+        // a cursor over the postings of every keyword
+        private PostingCursor[] cursors;
+        private Conditions conditions;
+        // without required words, the keyword whose cursor has the smallest docId is on top
+        private PriorityQueue<Integer> heap;
+        // with required words, the first docId not visited yet
+        private int candidate;
+        // the document of the last matches returned
+        private int docId;
+        // the visited documents and the matches found in them, for the metrics
+        private int scanned;
+        private int produced;
+
+        /**
+         *
+         * @param current the snapshot to search
+         * @param q
+         * @param from the first docId to search
+         * @param to the docId after the last one to search
+         */
+        MatchScan(Snapshot current, Query q, int from, int to) {
+            this.current = current;
+            this.q = q;
+            this.to = to;
+            int[] termIds = q.getTermIds(current.getDictionary());
+            int[][] expanded = q.hasExpansions() ? q.getExpansions(current.getDictionary()) : null;
+            // start every cursor at the first document of the range
+            this.cursors = new PostingCursor[termIds.length];
+            for (int i = 0; i < termIds.length; i++) {
+                if (expanded != null && expanded[i] != null) {
+                    cursors[i] = unionCursor(current, expanded[i]);
+                } else {
+                    cursors[i] = current.getIndex().cursor(termIds[i]);
+                }
+                cursors[i].advance(from);
+            }
+            this.conditions = q.hasConditions() ? new Conditions(current, q) : null;
+            this.candidate = from;
+            if (conditions == null || !conditions.hasRequired()) {
+                PostingCursor[] keywords = cursors;
+                this.heap = new PriorityQueue<>(Math.max(1, termIds.length),
+                        Comparator.comparingInt(i -> keywords[i].docId()));
+                for (int i = 0; i < termIds.length; i++) {
+                    if (cursors[i].docId() != PostingCursor.NO_MORE) {
+                        heap.add(i);
+                    }
+                }
+            }
+        }
+
+        /**
+         *
+         * @return <pre> the matches of the next document holding at least one keyword and meeting
+         * the conditions, one for each keyword it holds sorted by first index; null after the last one </pre>
+         * @effects move to that document, see docId()
+         */
+        List<Match> next() {
+            if (heap == null) {
+                while (candidate < to) {
+                    int found = conditions.nextCandidate(candidate);
+                    if (found >= to) {
+                        break;
+                    }
+                    candidate = found + 1;
+                    scanned++;
+                    List<Match> matches = matches(found);
+                    if (matches != null) {
+                        return matches;
+                    }
+                }
+                candidate = to;
+                return null;
+            }
+            while (!heap.isEmpty()) {
+                int found = cursors[heap.peek()].docId();
+                if (found >= to) {
+                    break;
+                }
+                List<Match> matches = matches(found);
+                scanned++;
+                // move every keyword found in the document to its next posting
+                while (!heap.isEmpty() && cursors[heap.peek()].docId() == found) {
+                    int i = heap.poll();
+                    cursors[i].next();
+                    if (cursors[i].docId() != PostingCursor.NO_MORE) {
+                        heap.add(i);
+                    }
+                }
+                if (matches != null) {
+                    return matches;
+                }
+            }
+            return null;
+        }
+
+        /**
+         *
+         * @return the docId of the matches returned by the last next()
+         */
+        int docId() {
+            return this.docId;
+        }
+
+        /**
+         *
+         * @effects add the documents visited and the matches found so far to the counters of the
+         * metrics, if they are on, and start counting again
+         */
+        void count() {
+            if (Metrics.isEnabled()) {
+                Metrics.count(Metrics.DOCS_SCANNED, scanned);
+                Metrics.count(Metrics.MATCHES_PRODUCED, produced);
+            }
+            scanned = 0;
+            produced = 0;
+        }
+
+        /**
+         *
+         * @param found larger than the docIds visited before
+         * @return <pre> the matches of the document, null if it is removed, misses the conditions
+         * or holds no keyword </pre>
+         */
+        private List<Match> matches(int found) {
+            if (current.isDeleted(found) || conditions != null && !conditions.holds(found)) {
+                return null;
+            }
+            Doc doc = current.getDoc(found);
+            List<Match> matches = null;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i].advance(found) != found) {
+                    continue;
+                }
+                // the positions are only decoded for the documents kept
+                Posting posting = cursors[i].posting();
+                if (matches == null) {
+                    matches = new ArrayList<>();
+                }
+                matches.add(new Match(doc, q.getKeywords().get(i), posting.getFrequency(), posting.getFirstIndex(),
+                        posting.getTitlePositions(), posting.getBodyPositions()));
+            }
+            if (matches != null) {
+                matches.sort((m1, m2) -> m1.getFirstIndex() - m2.getFirstIndex());
+                docId = found;
+                produced += matches.size();
+            }
+            return matches;
+        }
+    }
+
+    /**
+     *
+     * @param current the snapshot to search
+     * @param termIds the words matched by a wildcard or a fuzzy keyword
+     * @return <pre> a cursor over the documents holding some of the words, whose postings have
+     * the positions of all of them; the postings lists are merged as the cursor moves </pre>
+     */
+    private static PostingCursor unionCursor(Snapshot current, int[] termIds) {
+        List<PostingCursor> cursors = new ArrayList<>();
+        for (int termId : termIds) {
+            if (current.getIndex().size(termId) > 0) {
+                cursors.add(current.getIndex().cursor(termId));
+            }
+        }
+        if (cursors.isEmpty()) {
+            return PostingList.EMPTY.cursor();
+        }
+        return PostingCursor.union(cursors);
+    }
+
+    /**
+     * Conditions checks the required words, the excluded words, the phrases and the NEAR/k
+     * of a query against the index, for documents visited in increasing docId order
+     */
+    private static class Conditions {
+        // cursors over the postings of the required words and of the words of the proximities, shortest first
+        private List<PostingCursor> required;
+        private List<PostingCursor> excluded;
+        private List<ProximityCheck> proximities;
+
+        Conditions(Snapshot current, Query q) {
+            this.required = new ArrayList<>();
+            for (int termId : q.getRequiredTermIds(current.getDictionary())) {
+                required.add(current.getIndex().cursor(termId));
+            }
+            this.proximities = new ArrayList<>();
+            for (Proximity proximity : q.getProximities()) {
+                proximities.add(new ProximityCheck(current, proximity));
+                for (int termId : proximity.getTermIds(current.getDictionary())) {
+                    required.add(current.getIndex().cursor(termId));
+                }
+            }
+            required.sort(Comparator.comparingInt(PostingCursor::size));
+            this.excluded = new ArrayList<>();
+            for (int termId : q.getExcludedTermIds(current.getDictionary())) {
+                excluded.add(current.getIndex().cursor(termId));
+            }
+        }
+
+        /**
+         *
+         * @return whether some words must be in every matching document
+         */
+        boolean hasRequired() {
+            return !required.isEmpty();
+        }
+
+        /**
+         *
+         * @param docId larger than the candidates returned before
+         * @return <pre> the first docId at least docId holding every required word,
+         * Integer.MAX_VALUE if there is none </pre>
+         * @requires <pre> leapfrog: each list in turn skips to the candidate, a list without
+         * it moves the candidate to its next docId, until all the lists agree; the skip data
+         * of the lists lets them jump over whole blocks without decoding them </pre>
+         */
+        int nextCandidate(int docId) {
+            int candidate = docId;
+            int agreed = 0;
+            for (int j = 0; agreed < required.size(); j = (j + 1) % required.size()) {
+                int found = required.get(j).advance(candidate);
+                if (found == PostingCursor.NO_MORE) {
+                    return Integer.MAX_VALUE;
+                }
+                if (found == candidate) {
+                    agreed++;
+                } else {
+                    candidate = found;
+                    agreed = 1;
+                }
+            }
+            return candidate;
+        }
+
+        /**
+         *
+         * @param docId larger than the docIds checked before
+         * @return whether the document holds no excluded word and meets every phrase and NEAR/k
+         */
+        boolean holds(int docId) {
+            for (PostingCursor cursor : excluded) {
+                if (cursor.advance(docId) == docId) {
+                    return false;
+                }
+            }
+            for (ProximityCheck check : proximities) {
+                if (!check.holds(docId)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * ProximityCheck checks a phrase or a NEAR/k against the positional postings of its words,
+     * for documents visited in increasing docId order
+     */
+    private static class ProximityCheck {
+        private Proximity proximity;
+        // a cursor over the postings of each word
+        private PostingCursor[] cursors;
+
+        ProximityCheck(Snapshot current, Proximity proximity) {
+            this.proximity = proximity;
+            int[] termIds = proximity.getTermIds(current.getDictionary());
+            this.cursors = new PostingCursor[termIds.length];
+            for (int i = 0; i < termIds.length; i++) {
+                cursors[i] = current.getIndex().cursor(termIds[i]);
+            }
+        }
+
+        /**
+         *
+         * @param docId larger than the docIds checked before
+         * @return whether the condition holds in the title or in the body of the document
+         */
+        boolean holds(int docId) {
+            int[][] title = new int[cursors.length][];
+            int[][] body = new int[cursors.length][];
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i].advance(docId) != docId) {
+                    return false;
+                }
+                Posting posting = cursors[i].posting();
+                title[i] = posting.getTitlePositions();
+                body[i] = posting.getBodyPositions();
+            }
+            return proximity.matches(title) || proximity.matches(body);
+        }
+    }
+
     /**
      *
      * @param results
@@ -97,13 +1284,29 @@ public class Engine {
         if (results.isEmpty()) {
             return null;
         }
+        long start = Metrics.start();
         String resultHTMl = "";
         for (Result result : results) {
             resultHTMl = result.htmlHighlight();
         }
+        Metrics.HTML_RESULT.recordSince(start);
         return resultHTMl;
     }
 
+    /**
+     *
+     * @param results
+     * @param out
+     * @effects <pre> write the HTML of every result to out, in order, as <h3>title</h3><p>body</p>
+     * with the matched keywords highlighted; nothing is built in memory </pre>
+     * @throws IOException if out cannot be written
+     */
+    public void htmlResult(List<Result> results, Appendable out) throws IOException {
+        long start = Metrics.start();
+        HtmlRenderer.render(results, out);
+        Metrics.HTML_RESULT.recordSince(start);
+    }
+
     public static void main(String[] args) {
         Engine e = new Engine();
         int docs = e.loadDocs("docs");
@@ -0,0 +1,176 @@
+package engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * HtmlRenderer writes search results as HTML straight to an Appendable, a Writer or an OutputStream.
+ * Every result becomes <h3>title</h3><p>body</p>, with the matched keywords underlined in the title
+ * and in bold in the body, like the expected output of testCases.html. The lines are copied from the
+ * content of the document and escaped on the way, no String of the whole page is built
+ */
+public class HtmlRenderer {
+
+    /**
+     *
+     * @param results
+     * @param out
+     * @effects write the HTML of every result, in order, to out
+     * @throws IOException if out cannot be written
+     */
+    public static void render(List<Result> results, Appendable out) throws IOException {
+        for (Result result : results) {
+            render(result, out);
+        }
+    }
+
+    /**
+     *
+     * @param results
+     * @param out
+     * @effects write the HTML of every result to out in UTF-8, out is flushed but not closed
+     * @throws IOException if out cannot be written
+     */
+    public static void render(List<Result> results, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        render(results, writer);
+        writer.flush();
+    }
+
+    /**
+     *
+     * @param result
+     * @param out
+     * @effects write <h3>title</h3><p>body</p> of the document of the result to out
+     * @throws IOException if out cannot be written
+     */
+    public static void render(Result result, Appendable out) throws IOException {
+        Doc doc = result.getDoc();
+        List<Match> matches = result.getMatches();
+        boolean[] title = new boolean[doc.getTitleTerms().length];
+        boolean[] body = new boolean[doc.getBodyTerms().length];
+        // the term ids of the matched keywords whose positions are not known
+        int[] termIds = new int[matches.size()];
+        for (int i = 0; i < termIds.length; i++) {
+            Match match = matches.get(i);
+            if (match.getTitlePositions() != null && match.getBodyPositions() != null) {
+                // the positions also cover the words of a wildcard
+                mark(title, match.getTitlePositions());
+                mark(body, match.getBodyPositions());
+                termIds[i] = -1;
+            } else {
+                termIds[i] = doc.getDictionary().lookup(TermDictionary.fold(match.getWord().getText()));
+            }
+        }
+        // every word of the document is looked up once
+        KeywordTable highlighted = new KeywordTable(termIds);
+        mark(title, doc.getTitleTerms(), highlighted);
+        mark(body, doc.getBodyTerms(), highlighted);
+        String content = doc.getContent();
+        out.append("<h3>");
+        renderLine(content, 0, title, doc.getTitleOffsets(), "<u>", "</u>", out);
+        out.append("</h3><p>");
+        renderLine(content, doc.getBodyStart(), body, doc.getBodyOffsets(), "<b>", "</b>", out);
+        out.append("</p>");
+    }
+
+    /**
+     *
+     * @param highlighted a flag for every word of a line
+     * @param positions
+     * @effects flag the words at the positions
+     */
+    private static void mark(boolean[] highlighted, int[] positions) {
+        for (int position : positions) {
+            highlighted[position] = true;
+        }
+    }
+
+    /**
+     *
+     * @param highlighted a flag for every word of a line
+     * @param terms the term ids of the words of the line
+     * @param termIds the term ids to highlight
+     * @effects flag the words with one of the term ids
+     */
+    private static void mark(boolean[] highlighted, int[] terms, KeywordTable termIds) {
+        if (termIds.size() == 0) {
+            return;
+        }
+        for (int i = 0; i < terms.length; i++) {
+            if (termIds.slotOf(terms[i]) >= 0) {
+                highlighted[i] = true;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param content the content of the document
+     * @param lineStart the position of the line in the content
+     * @param highlighted a flag for every word of the line, set for the words to highlight
+     * @param offsets the offsets of the words of the line
+     * @param open the tag opened before a highlighted word
+     * @param close the tag closed after a highlighted word
+     * @param out
+     * @effects <pre> copy the line to out, escaped, with the text of every highlighted word
+     * between the tags; prefixes and suffixes stay outside of the tags </pre>
+     * @throws IOException if out cannot be written
+     */
+    private static void renderLine(String content, int lineStart, boolean[] highlighted, int[] offsets,
+                                   String open, String close, Appendable out) throws IOException {
+        int position = lineStart;
+        for (int i = 0; i < highlighted.length; i++) {
+            if (!highlighted[i]) {
+                continue;
+            }
+            int textStart = offsets[i * 3];
+            int textEnd = offsets[i * 3 + 1];
+            escape(content, position, textStart, out);
+            out.append(open);
+            escape(content, textStart, textEnd, out);
+            out.append(close);
+            position = textEnd;
+        }
+        // the line ends with its last word, like the words of the document
+        int lineEnd = highlighted.length == 0 ? lineStart : offsets[highlighted.length * 3 - 1];
+        escape(content, position, lineEnd, out);
+    }
+
+    /**
+     *
+     * @param s
+     * @param start
+     * @param end
+     * @param out
+     * @effects write s[start, end) to out, with &, < and > escaped; unescaped runs are written at once
+     * @throws IOException if out cannot be written
+     */
+    static void escape(CharSequence s, int start, int end, Appendable out) throws IOException {
+        int run = start;
+        for (int i = start; i < end; i++) {
+            String entity;
+            switch (s.charAt(i)) {
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                default:
+                    continue;
+            }
+            out.append(s, run, i).append(entity);
+            run = i + 1;
+        }
+        out.append(s, run, end);
+    }
+}
@@ -0,0 +1,222 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index is an in-memory inverted index of the documents of an Engine.
+ * It maps each normalized word to the list of documents (postings) that contain it,
+ * kept compressed in a PostingList and read through a PostingCursor.
+ * Postings lists only grow at their end, so copy() can share them: a copy copies a list
+ * the first time it appends to it, and the copy shares the encoded blocks of the original
+ */
+public class Index {
+
+    /**
+     * private attributes, the dictionary of the term ids, the postings lists by term id,
+     * and whether each list belongs to this index or is still shared with the one it was copied from
+     */
+    private TermDictionary dictionary;
+    private PostingList[] postings;
+    private boolean[] owned;
+
+    /**
+     * Constructor
+     */
+    public Index() {
+        this(new TermDictionary());
+    }
+
+    /**
+     * A constructor of an empty index
+     * @param dictionary the dictionary of the term ids of its documents
+     */
+    Index(TermDictionary dictionary) {
+        this(dictionary, new PostingList[0]);
+    }
+
+    /**
+     * A constructor sharing the postings lists of another index
+     * @param dictionary
+     * @param postings
+     */
+    private Index(TermDictionary dictionary, PostingList[] postings) {
+        this.dictionary = dictionary;
+        this.postings = postings;
+        this.owned = new boolean[postings.length];
+    }
+
+    /**
+     *
+     * @return the dictionary of the term ids of the index, shared with its copies
+     */
+    TermDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    /**
+     *
+     * @return <pre> an index with the same postings that can be changed without changing this one,
+     * it costs O(number of terms) because the postings lists are shared </pre>
+     * @requires only the latest copy is ever changed, so two copies never append to the same list
+     */
+    Index copy() {
+        return new Index(dictionary, postings.clone());
+    }
+
+    /**
+     *
+     * @param docId the position of the document in the engine
+     * @param d
+     * @effects add a posting for every distinct word of the document
+     * @requires documents are added in increasing docId order, so every postings list stays sorted
+     */
+    public void addDoc(int docId, Doc d) {
+        Map<Integer, Posting> docPostings = analyze(d);
+        if (d.getDictionary() != dictionary) {
+            // the words of the document get term ids of this index
+            Map<Integer, Posting> translated = new HashMap<>();
+            for (Map.Entry<Integer, Posting> entry : docPostings.entrySet()) {
+                translated.put(dictionary.getId(d.getDictionary().getTerm(entry.getKey())), entry.getValue());
+            }
+            docPostings = translated;
+        }
+        addPostings(docId, docPostings);
+    }
+
+    /**
+     *
+     * @param d
+     * @return the postings of a document by term id, their docId is not set yet
+     * @requires <pre> it does not touch the index, so many documents can be analyzed
+     * on different threads at the same time </pre>
+     */
+    static Map<Integer, Posting> analyze(Doc d) {
+        Map<Integer, Posting> docPostings = new HashMap<>();
+        int[] title = d.getTitleTerms();
+        for (int i = 0; i < title.length; i++) {
+            docPostings.computeIfAbsent(title[i], k -> new Posting(-1)).addTitleOccurrence(i);
+        }
+        int[] body = d.getBodyTerms();
+        for (int i = 0; i < body.length; i++) {
+            docPostings.computeIfAbsent(body[i], k -> new Posting(-1)).addBodyOccurrence(i);
+        }
+        for (Posting posting : docPostings.values()) {
+            posting.compact();
+        }
+        return docPostings;
+    }
+
+    /**
+     *
+     * @param docId the position of the document in the engine
+     * @param docPostings the result of analyze() for that document
+     * @effects append the postings of a document to the global postings lists
+     * @requires documents are added in increasing docId order, so every postings list stays sorted
+     */
+    void addPostings(int docId, Map<Integer, Posting> docPostings) {
+        for (Map.Entry<Integer, Posting> entry : docPostings.entrySet()) {
+            Posting posting = entry.getValue();
+            posting.setDocId(docId);
+            addPosting(entry.getKey(), posting);
+        }
+    }
+
+    /**
+     *
+     * @param termId
+     * @param posting
+     * @effects append the posting to the postings list of the term
+     * @requires its docId is larger than the ones already in the list
+     */
+    void addPosting(int termId, Posting posting) {
+        if (termId >= postings.length) {
+            int capacity = Math.max(termId + 1, postings.length * 2);
+            postings = Arrays.copyOf(postings, capacity);
+            owned = Arrays.copyOf(owned, capacity);
+        }
+        PostingList list = postings[termId];
+        if (list == null) {
+            list = new PostingList();
+        } else if (!owned[termId]) {
+            // an older copy may be searched right now, it keeps its own list
+            list = list.copy();
+        }
+        list.add(posting);
+        postings[termId] = list;
+        owned[termId] = true;
+    }
+
+    /**
+     *
+     * @param keyword
+     * @return the postings of the keyword sorted by docId, an empty list if no document contains it
+     */
+    public List<Posting> getPostings(Word keyword) {
+        return getPostings(dictionary.lookup(TermDictionary.fold(keyword.getText())));
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the postings of the term sorted by docId, an empty list if no document contains it
+     */
+    List<Posting> getPostings(int termId) {
+        return Collections.unmodifiableList(getList(termId).toList());
+    }
+
+    /**
+     *
+     * @param termId
+     * @return a cursor at the first posting of the term, an exhausted one if no document contains it
+     */
+    PostingCursor cursor(int termId) {
+        return getList(termId).cursor();
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the number of documents whose postings of the term are in the index
+     */
+    int size(int termId) {
+        return getList(termId).size();
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the postings list of the term, an empty one if no document contains it
+     */
+    private PostingList getList(int termId) {
+        if (termId < 0 || termId >= postings.length || postings[termId] == null) {
+            return PostingList.EMPTY;
+        }
+        return postings[termId];
+    }
+
+    /**
+     *
+     * @return the number of bytes of the encoded postings of every term
+     */
+    long getEncodedBytes() {
+        long bytes = 0;
+        for (PostingList list : postings) {
+            if (list != null) {
+                bytes += list.getEncodedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     *
+     * @return one more than the largest term id that may have postings
+     */
+    int getTermCapacity() {
+        return postings.length;
+    }
+}
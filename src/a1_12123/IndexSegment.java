@@ -0,0 +1,375 @@
+package engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * IndexSegment is the binary on-disk form of the documents and the index of an Engine,
+ * so a restart can read it back instead of reading and tokenizing every document again.
+ * <pre>
+ * header:   magic, version, fingerprint of the source folder, CRC32 of the payload
+ * payload:  term dictionary (the case-folded terms, by local term id)
+ *           documents (source file, original text, body start, term ids and word offsets of title and body)
+ *           postings (for each term: docId, title positions, body positions)
+ * </pre>
+ * All numbers are big-endian ints or longs and the texts are UTF-16 chars.
+ * A segment is read with one plain read of the whole file, not memory-mapped: every part of it
+ * is decoded into documents and postings lists, so loading still costs a pass over the segment
+ */
+public class IndexSegment {
+
+    /**
+     * format constants
+     */
+    private static final int MAGIC = 0x53454758;
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+
+    /**
+     * private attributes
+     */
+    private List<Doc> docs;
+    private List<SourceFile> sources;
+    private int[] termIds;
+    private List<List<Posting>> postings;
+
+    /**
+     * A constructor of class IndexSegment
+     * @param docs the documents, in order
+     * @param sources the file of each document
+     * @param termIds the term id in the engine of each local term id
+     * @param postings the postings of each local term id, sorted by docId
+     */
+    private IndexSegment(List<Doc> docs, List<SourceFile> sources, int[] termIds, List<List<Posting>> postings) {
+        this.docs = docs;
+        this.sources = sources;
+        this.termIds = termIds;
+        this.postings = postings;
+    }
+
+    /**
+     *
+     * @return the documents of the segment, in order
+     */
+    public List<Doc> getDocs() {
+        return this.docs;
+    }
+
+    /**
+     *
+     * @return the file each document was loaded from, in the order of the documents
+     */
+    List<SourceFile> getSources() {
+        return this.sources;
+    }
+
+    /**
+     *
+     * @param index
+     * @param firstDocId the docId of the first document of the segment in the index
+     * @effects add the postings of the segment to the index
+     */
+    void addTo(Index index, int firstDocId) {
+        for (int local = 0; local < termIds.length; local++) {
+            for (Posting posting : postings.get(local)) {
+                posting.setDocId(firstDocId + posting.getDocId());
+                index.addPosting(termIds[local], posting);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param dirname
+     * @return a fingerprint of the names, sizes and modification times of the files of the folder,
+     * it changes when a file is added, removed or edited
+     */
+    public static long fingerprint(String dirname) {
+        return fingerprint(dirname, Collections.emptyMap(), null);
+    }
+
+    /**
+     *
+     * @param dirname
+     * @param read the files of the folder whose documents were read, by path, as they were read
+     * @param segment the file of the segment, left out if it is in the folder, null for none
+     * @return <pre> the fingerprint of every file of the folder, each once: the read files as they were
+     * read, even if they are gone since, and the other files, which may not be documents, as they are now.
+     * It equals fingerprint(dirname, empty map, segment) while the read files are unchanged
+     * and no file was added or removed </pre>
+     */
+    static long fingerprint(String dirname, Map<String, SourceFile> read, Path segment) {
+        Map<String, SourceFile> sources = new HashMap<>(read);
+        File[] files = new File(dirname).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    sources.putIfAbsent(file.getAbsolutePath(), SourceFile.of(file));
+                }
+            }
+        }
+        if (segment != null) {
+            // the segment changes whenever it is written
+            sources.remove(segment.toFile().getAbsolutePath());
+        }
+        List<SourceFile> sorted = new ArrayList<>(sources.values());
+        sorted.sort(Comparator.comparing(SourceFile::getPath));
+        CRC32 crc = new CRC32();
+        for (SourceFile source : sorted) {
+            String line = new File(source.getPath()).getName() + "|" + source.getSize() + "|"
+                    + source.getLastModified() + "\n";
+            crc.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     *
+     * @param path
+     * @param docs the documents of the engine, in order
+     * @param sources the file of each document
+     * @param deleted the removed documents, they are left out
+     * @param index the index of the documents
+     * @param fingerprint the fingerprint of the source folder, see fingerprint()
+     * @effects write the segment to a temporary file, then move it to the path
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path path, List<Doc> docs, List<SourceFile> sources, BitSet deleted, Index index,
+                      long fingerprint) throws IOException {
+        // number the remaining documents again
+        int[] newDocIds = new int[docs.size()];
+        int live = 0;
+        for (int docId = 0; docId < docs.size(); docId++) {
+            newDocIds[docId] = deleted.get(docId) ? -1 : live++;
+        }
+        // give the terms used by the remaining documents dense local ids
+        int[] localIds = new int[index.getTermCapacity()];
+        List<Integer> globalIds = new ArrayList<>();
+        for (int termId = 0; termId < localIds.length; termId++) {
+            localIds[termId] = -1;
+            for (Posting posting : index.getPostings(termId)) {
+                if (newDocIds[posting.getDocId()] >= 0) {
+                    localIds[termId] = globalIds.size();
+                    globalIds.add(termId);
+                    break;
+                }
+            }
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // header, the checksum is filled in at the end
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putLong(0).flip();
+            channel.write(header);
+
+            CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            // term dictionary
+            out.writeInt(globalIds.size());
+            for (int termId : globalIds) {
+                writeString(out, index.getDictionary().getTerm(termId));
+            }
+            // documents
+            out.writeInt(live);
+            for (int docId = 0; docId < docs.size(); docId++) {
+                if (newDocIds[docId] < 0) {
+                    continue;
+                }
+                Doc doc = docs.get(docId);
+                SourceFile source = sources.get(docId);
+                writeString(out, source.getPath());
+                out.writeLong(source.getSize());
+                out.writeLong(source.getLastModified());
+                writeString(out, doc.getContent());
+                out.writeInt(doc.getBodyStart());
+                writeTerms(out, doc.getTitleTerms(), localIds);
+                writeInts(out, doc.getTitleOffsets());
+                writeTerms(out, doc.getBodyTerms(), localIds);
+                writeInts(out, doc.getBodyOffsets());
+            }
+            // postings, by local term id
+            for (int termId : globalIds) {
+                List<Posting> list = new ArrayList<>();
+                for (Posting posting : index.getPostings(termId)) {
+                    if (newDocIds[posting.getDocId()] >= 0) {
+                        list.add(posting);
+                    }
+                }
+                out.writeInt(list.size());
+                for (Posting posting : list) {
+                    out.writeInt(newDocIds[posting.getDocId()]);
+                    writeInts(out, posting.getTitlePositions());
+                    writeInts(out, posting.getBodyPositions());
+                }
+            }
+            out.flush();
+
+            ByteBuffer crc = ByteBuffer.allocate(8);
+            crc.putLong(checked.getChecksum().getValue()).flip();
+            channel.write(crc, HEADER_BYTES - 8);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     *
+     * @param path
+     * @param fingerprint the current fingerprint of the source folder
+     * @param dictionary the dictionary of the engine, the terms of the segment get term ids in it
+     * @return the segment, null if the file is missing, from another version, corrupted,
+     * or stale because the source folder changed since it was written
+     * @throws IOException if the file exists but cannot be read
+     */
+    static IndexSegment read(Path path, long fingerprint, TermDictionary dictionary) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        // the segment is decoded into documents and postings lists, so it is read at once
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != fingerprint) {
+            return null;
+        }
+        long expectedCrc = in.getLong();
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate());
+        if (crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        // term dictionary, mapped to the term ids of the engine
+        int[] termIds = new int[in.getInt()];
+        for (int local = 0; local < termIds.length; local++) {
+            termIds[local] = dictionary.getId(readString(in));
+        }
+        // documents
+        int docCount = in.getInt();
+        List<Doc> docs = new ArrayList<>(docCount);
+        List<SourceFile> sources = new ArrayList<>(docCount);
+        for (int i = 0; i < docCount; i++) {
+            sources.add(new SourceFile(readString(in), in.getLong(), in.getLong()));
+            String content = readString(in);
+            int bodyStart = in.getInt();
+            int[] titleTerms = readTerms(in, termIds);
+            int[] titleOffsets = readInts(in);
+            int[] bodyTerms = readTerms(in, termIds);
+            int[] bodyOffsets = readInts(in);
+            docs.add(new Doc(content, dictionary, bodyStart, titleTerms, titleOffsets, bodyTerms, bodyOffsets));
+        }
+        // postings
+        List<List<Posting>> postings = new ArrayList<>(termIds.length);
+        for (int local = 0; local < termIds.length; local++) {
+            int size = in.getInt();
+            List<Posting> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(new Posting(in.getInt(), readInts(in), readInts(in)));
+            }
+            postings.add(list);
+        }
+        return new IndexSegment(docs, sources, termIds, postings);
+    }
+
+    /**
+     *
+     * @param out
+     * @param s
+     * @effects write the length of the string, then its chars
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /**
+     *
+     * @param in
+     * @return a string written by writeString()
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String s = in.asCharBuffer().limit(length).toString();
+        in.position(in.position() + length * 2);
+        return s;
+    }
+
+    /**
+     *
+     * @param out
+     * @param values
+     * @effects write the length of the array, then its ints
+     * @throws IOException
+     */
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     *
+     * @param in
+     * @return an array written by writeInts()
+     */
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    /**
+     *
+     * @param out
+     * @param terms term ids of the engine
+     * @param localIds the local id of each term id of the engine
+     * @effects write the term ids as local ids
+     * @throws IOException
+     */
+    private static void writeTerms(DataOutputStream out, int[] terms, int[] localIds) throws IOException {
+        out.writeInt(terms.length);
+        for (int termId : terms) {
+            out.writeInt(localIds[termId]);
+        }
+    }
+
+    /**
+     *
+     * @param in
+     * @param termIds the term id in the engine of each local term id
+     * @return term ids written by writeTerms(), as term ids of the engine
+     */
+    private static int[] readTerms(ByteBuffer in, int[] termIds) {
+        int[] terms = readInts(in);
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = termIds[terms[i]];
+        }
+        return terms;
+    }
+}
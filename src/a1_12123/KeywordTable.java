@@ -0,0 +1,72 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * KeywordTable maps the term ids of a few keywords to slots 0..n-1 with open addressing,
+ * so the words of a document can be looked up one by one without boxing
+ */
+class KeywordTable {
+
+    /**
+     * private attributes
+     */
+    private int[] keys;
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    /**
+     * A constructor of class KeywordTable
+     * @param termIds the term ids of the keywords, negative ids (unknown terms) are ignored
+     * @effects give every distinct term id a slot, in order of first appearance
+     */
+    KeywordTable(int[] termIds) {
+        int capacity = 4;
+        while (capacity < termIds.length * 2) {
+            capacity *= 2;
+        }
+        this.keys = new int[capacity];
+        Arrays.fill(keys, -1);
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int termId : termIds) {
+            if (termId >= 0 && slotOf(termId) < 0) {
+                int i = position(termId);
+                keys[i] = termId;
+                slots[i] = size++;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the slot of the term id, -1 if it is not a keyword
+     */
+    int slotOf(int termId) {
+        int i = position(termId);
+        return keys[i] == termId ? slots[i] : -1;
+    }
+
+    /**
+     *
+     * @return the number of distinct keywords
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the position of the term id in the table, or of the free cell where it would go
+     */
+    private int position(int termId) {
+        int i = (termId * 0x9E3779B9 >>> 16) & mask;
+        while (keys[i] != -1 && keys[i] != termId) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,219 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram records durations in nanoseconds into logarithmic buckets, like HdrHistogram:
+ * every power of two is split into 8 sub-buckets, so a percentile is off by at most 12.5%.
+ * Recording is lock-free and never allocates, so any number of threads can record at once
+ */
+public class LatencyHistogram {
+
+    /**
+     * bucket layout: the values below 8 have their own bucket, then 8 buckets per power of two
+     */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * private attributes
+     */
+    private final String name;
+    private final AtomicLongArray counts;
+    private final LongAdder total;
+    private final LongAccumulator max;
+
+    /**
+     * A constructor of class LatencyHistogram
+     * @param name what is measured
+     */
+    LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     *
+     * @return what is measured
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     *
+     * @param nanos
+     * @effects count one duration
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     *
+     * @param start the result of Metrics.start(), 0 if the metrics were off
+     * @effects count the time since start, nothing if the metrics were off
+     */
+    void recordSince(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     *
+     * @effects forget every recorded duration
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     *
+     * @return the count, the mean, the main percentiles and the largest duration recorded so far
+     */
+    public Summary summarize() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long largest = max.get();
+        double mean = count == 0 ? 0 : (double) total.sum() / count;
+        return new Summary(name, count, mean, percentile(snapshot, count, 0.5, largest),
+                percentile(snapshot, count, 0.9, largest), percentile(snapshot, count, 0.99, largest),
+                percentile(snapshot, count, 0.999, largest), largest);
+    }
+
+    /**
+     *
+     * @param snapshot the counts of the buckets
+     * @param count their sum
+     * @param quantile from 0 to 1
+     * @param largest the largest duration
+     * @return the highest value of the bucket holding the quantile, at most the largest duration
+     */
+    private static long percentile(long[] snapshot, long count, double quantile, long largest) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(largest, lowerBound(i + 1) - 1);
+            }
+        }
+        return largest;
+    }
+
+    /**
+     *
+     * @param value
+     * @return the bucket of the value
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     *
+     * @param bucket
+     * @return the smallest value of the bucket
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket >= BUCKETS) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (1L << exponent) + ((long) sub << (exponent - SUB_BITS));
+    }
+
+    /**
+     * Summary is a read-only view of a histogram at some moment, durations are in nanoseconds
+     */
+    public static class Summary {
+        private final String name;
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Summary(String name, long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.name = name;
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMean() {
+            return this.mean;
+        }
+
+        public long getP50() {
+            return this.p50;
+        }
+
+        public long getP90() {
+            return this.p90;
+        }
+
+        public long getP99() {
+            return this.p99;
+        }
+
+        public long getP999() {
+            return this.p999;
+        }
+
+        public long getMax() {
+            return this.max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                    name, count, mean, p50, p90, p99, p999, max);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package engine;
+
+/**
+ * LevenshteinAutomaton accepts the words within a few edits of a term: inserted, removed or
+ * replaced characters, and two neighbouring characters swapped (so "desgin" is one edit from
+ * "design"). A state is the row of edit distances between the term and the characters read
+ * so far, capped at the largest distance plus one; it is read one character at a time,
+ * so walking it over TermTrie shares the work of every common prefix
+ */
+final class LevenshteinAutomaton {
+
+    /**
+     * the largest number of edits
+     */
+    static final int MAX_DISTANCE = 2;
+
+    /**
+     * private attributes
+     */
+    private char[] term;
+    private int distance;
+
+    /**
+     * A constructor of class LevenshteinAutomaton
+     * @param term a case-folded word
+     * @param distance the largest number of edits
+     * @requires 0 <= distance <= MAX_DISTANCE
+     */
+    LevenshteinAutomaton(String term, int distance) {
+        this.term = term.toCharArray();
+        this.distance = distance;
+    }
+
+    /**
+     *
+     * @return the state before any character, the distances to every prefix of the term
+     */
+    int[] start() {
+        int[] row = new int[term.length + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = Math.min(i, distance + 1);
+        }
+        return row;
+    }
+
+    /**
+     *
+     * @param row the current state
+     * @param previousRow the state before the last character, null after no character
+     * @param previous the last character read
+     * @param c the next character
+     * @return the state after c
+     */
+    int[] step(int[] row, int[] previousRow, char previous, char c) {
+        int[] next = new int[row.length];
+        next[0] = Math.min(row[0] + 1, distance + 1);
+        for (int i = 1; i < row.length; i++) {
+            int cost = term[i - 1] == c ? 0 : 1;
+            int edits = Math.min(Math.min(next[i - 1] + 1, row[i] + 1), row[i - 1] + cost);
+            if (previousRow != null && i > 1 && term[i - 1] == previous && term[i - 2] == c) {
+                // the last two characters swapped
+                edits = Math.min(edits, previousRow[i - 2] + 1);
+            }
+            next[i] = Math.min(edits, distance + 1);
+        }
+        return next;
+    }
+
+    /**
+     *
+     * @param row
+     * @return whether the characters read so far are within the distance of the term
+     */
+    boolean isMatch(int[] row) {
+        return row[row.length - 1] <= distance;
+    }
+
+    /**
+     *
+     * @param row
+     * @return whether some longer word starting with the characters read so far can still match
+     */
+    boolean canMatch(int[] row) {
+        for (int edits : row) {
+            if (edits <= distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -12,6 +12,9 @@ public class Match implements Comparable<Match> {
     private Word word;
     private int frequency;
     private int firstIndex;
+    // every position of the word in the title and in the body, null if they are not known
+    private int[] titlePositions;
+    private int[] bodyPositions;
 
     /**
      * A constructor of class Match
@@ -28,6 +31,21 @@ public class Match implements Comparable<Match> {
         this.firstIndex = firstIndex;
     }
 
+    /**
+     * A constructor of class Match which also keeps the positions found while matching
+     * @param d
+     * @param w
+     * @param freq
+     * @param firstIndex
+     * @param titlePositions every position of the word in the title, in increasing order
+     * @param bodyPositions every position of the word in the body, in increasing order
+     */
+    Match(Doc d, Word w, int freq, int firstIndex, int[] titlePositions, int[] bodyPositions) {
+        this(d, w, freq, firstIndex);
+        this.titlePositions = titlePositions;
+        this.bodyPositions = bodyPositions;
+    }
+
     /**
      *
      * @return the number of times the Word appears in the Doc
@@ -44,6 +62,24 @@ public class Match implements Comparable<Match> {
         return this.firstIndex;
     }
 
+    /**
+     *
+     * @return every position of the Word in the title of the Doc, null if they are not known;
+     * it must not be changed
+     */
+    public int[] getTitlePositions() {
+        return this.titlePositions;
+    }
+
+    /**
+     *
+     * @return every position of the Word in the body of the Doc, null if they are not known;
+     * it must not be changed
+     */
+    public int[] getBodyPositions() {
+        return this.bodyPositions;
+    }
+
     /**
      *
      * @param o the object to be compared.
@@ -0,0 +1,231 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics records how long the hot paths of the engine take and counts the work they do.
+ * It is off by default: then start() returns 0 without reading the clock and every record
+ * or count is a single branch. The values can be pulled with snapshot() or read over JMX
+ */
+public final class Metrics {
+
+    /**
+     * latency of the hot paths
+     */
+    static final LatencyHistogram LOAD_DOCS = new LatencyHistogram("loadDocs");
+    static final LatencyHistogram TOKENIZE = new LatencyHistogram("tokenize");
+    static final LatencyHistogram QUERY_PARSE = new LatencyHistogram("queryParse");
+    static final LatencyHistogram MATCH_AGAINST = new LatencyHistogram("matchAgainst");
+    static final LatencyHistogram SEARCH = new LatencyHistogram("search");
+    static final LatencyHistogram RANK = new LatencyHistogram("rank");
+    static final LatencyHistogram HTML_RESULT = new LatencyHistogram("htmlResult");
+
+    /**
+     * counters of the work done
+     */
+    static final LongAdder DOCS_LOADED = new LongAdder();
+    static final LongAdder LOAD_ERRORS = new LongAdder();
+    static final LongAdder DOCS_SCANNED = new LongAdder();
+    static final LongAdder MATCHES_PRODUCED = new LongAdder();
+    static final LongAdder RESULTS_RETURNED = new LongAdder();
+
+    /**
+     * private attributes
+     */
+    private static volatile boolean enabled;
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     *
+     * @param on true to record, false for the no-op mode
+     * @effects turn the metrics on or off, what was recorded is kept
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     *
+     * @return whether the metrics are recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     *
+     * @return the current time in nanoseconds to pass to LatencyHistogram.recordSince(), 0 if the metrics are off
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     *
+     * @param start the result of start()
+     * @return the nanoseconds since start, 0 if the metrics were off
+     */
+    static long elapsed(long start) {
+        return start != 0 ? System.nanoTime() - start : 0;
+    }
+
+    /**
+     *
+     * @param counter
+     * @param amount
+     * @effects add the amount to the counter if the metrics are on
+     */
+    static void count(LongAdder counter, long amount) {
+        if (enabled) {
+            counter.add(amount);
+        }
+    }
+
+    /**
+     *
+     * @effects forget every recorded latency and count
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms()) {
+            histogram.reset();
+        }
+        for (LongAdder counter : counters().values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     *
+     * @return the latencies by name, then the counters by name, as they are now
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (LatencyHistogram histogram : histograms()) {
+            values.put(histogram.getName(), histogram.summarize());
+        }
+        for (Map.Entry<String, LongAdder> counter : counters().entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        return values;
+    }
+
+    /**
+     *
+     * @effects register the metrics as the MXBean engine:type=Metrics of the platform MBean server, once
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static synchronized void registerMBean() throws JMException {
+        if (registered) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(new Bean(), new ObjectName("engine:type=Metrics"));
+        registered = true;
+    }
+
+    /**
+     *
+     * @return every histogram
+     */
+    private static List<LatencyHistogram> histograms() {
+        List<LatencyHistogram> histograms = new ArrayList<>();
+        histograms.add(LOAD_DOCS);
+        histograms.add(TOKENIZE);
+        histograms.add(QUERY_PARSE);
+        histograms.add(MATCH_AGAINST);
+        histograms.add(SEARCH);
+        histograms.add(RANK);
+        histograms.add(HTML_RESULT);
+        return histograms;
+    }
+
+    /**
+     *
+     * @return every counter by name
+     */
+    private static Map<String, LongAdder> counters() {
+        Map<String, LongAdder> counters = new LinkedHashMap<>();
+        counters.put("docsLoaded", DOCS_LOADED);
+        counters.put("loadErrors", LOAD_ERRORS);
+        counters.put("docsScanned", DOCS_SCANNED);
+        counters.put("matchesProduced", MATCHES_PRODUCED);
+        counters.put("resultsReturned", RESULTS_RETURNED);
+        return counters;
+    }
+
+    /**
+     * The MXBean reading the static metrics
+     */
+    private static class Bean implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean on) {
+            Metrics.setEnabled(on);
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getLoadDocs() {
+            return LOAD_DOCS.summarize();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getTokenize() {
+            return TOKENIZE.summarize();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getQueryParse() {
+            return QUERY_PARSE.summarize();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getMatchAgainst() {
+            return MATCH_AGAINST.summarize();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getSearch() {
+            return SEARCH.summarize();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getRank() {
+            return RANK.summarize();
+        }
+
+        @Override
+        public LatencyHistogram.Summary getHtmlResult() {
+            return HTML_RESULT.summarize();
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Map.Entry<String, LongAdder> counter : counters().entrySet()) {
+                values.put(counter.getKey(), counter.getValue().sum());
+            }
+            return values;
+        }
+    }
+}
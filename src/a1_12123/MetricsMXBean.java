@@ -0,0 +1,31 @@
+package engine;
+
+import java.util.Map;
+
+/**
+ * The management interface of Metrics, registered as engine:type=Metrics by Metrics.registerMBean()
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void reset();
+
+    LatencyHistogram.Summary getLoadDocs();
+
+    LatencyHistogram.Summary getTokenize();
+
+    LatencyHistogram.Summary getQueryParse();
+
+    LatencyHistogram.Summary getMatchAgainst();
+
+    LatencyHistogram.Summary getSearch();
+
+    LatencyHistogram.Summary getRank();
+
+    LatencyHistogram.Summary getHtmlResult();
+
+    Map<String, Long> getCounters();
+}
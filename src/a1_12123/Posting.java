@@ -0,0 +1,195 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * A Posting records how a single keyword occurs in a single document:
+ * every position of the keyword in the title and in the body, from which
+ * the frequency and the first index are derived
+ */
+public class Posting {
+
+    /**
+     * private attributes
+     */
+    private int docId;
+    // the positions in the title and in the body, only the first frequency ones are used
+    private int[] titlePositions;
+    private int[] bodyPositions;
+    private int titleFrequency;
+    private int bodyFrequency;
+
+    /**
+     * shared by all the postings missing from the title or the body
+     */
+    private static final int[] NO_POSITIONS = new int[0];
+
+    /**
+     * A constructor of class Posting
+     * @param docId the position of the document in the engine
+     * @effects initialize an empty Posting, the keyword is not found in the title or the body yet
+     */
+    public Posting(int docId) {
+        this.docId = docId;
+        this.titlePositions = NO_POSITIONS;
+        this.bodyPositions = NO_POSITIONS;
+    }
+
+    /**
+     * A constructor of class Posting with all its positions, used to read back an IndexSegment
+     * @param docId
+     * @param titlePositions the positions in the title, in increasing order
+     * @param bodyPositions the positions in the body, in increasing order
+     */
+    Posting(int docId, int[] titlePositions, int[] bodyPositions) {
+        this.docId = docId;
+        this.titlePositions = titlePositions;
+        this.bodyPositions = bodyPositions;
+        this.titleFrequency = titlePositions.length;
+        this.bodyFrequency = bodyPositions.length;
+    }
+
+    /**
+     *
+     * @param docId the position of the document in the engine
+     * @effects set the document of the posting once its position is known
+     */
+    void setDocId(int docId) {
+        this.docId = docId;
+    }
+
+    /**
+     *
+     * @param index the position of the keyword in the title
+     * @effects count one more appearance of the keyword in the title
+     */
+    void addTitleOccurrence(int index) {
+        titlePositions = append(titlePositions, titleFrequency++, index);
+    }
+
+    /**
+     *
+     * @param index the position of the keyword in the body
+     * @effects count one more appearance of the keyword in the body
+     */
+    void addBodyOccurrence(int index) {
+        bodyPositions = append(bodyPositions, bodyFrequency++, index);
+    }
+
+    /**
+     *
+     * @param positions
+     * @param size the number of used positions
+     * @param index
+     * @return the positions with the index added at the end, grown if they are full
+     */
+    private static int[] append(int[] positions, int size, int index) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(2, size * 2));
+        }
+        positions[size] = index;
+        return positions;
+    }
+
+    /**
+     *
+     * @effects drop the unused room of the positions, once all the occurrences are added
+     */
+    void compact() {
+        titlePositions = getTitlePositions();
+        bodyPositions = getBodyPositions();
+    }
+
+    /**
+     *
+     * @return the position of the document in the engine
+     */
+    public int getDocId() {
+        return this.docId;
+    }
+
+    /**
+     *
+     * @return the number of times the keyword appears in the title
+     */
+    public int getTitleFrequency() {
+        return this.titleFrequency;
+    }
+
+    /**
+     *
+     * @return the number of times the keyword appears in the body
+     */
+    public int getBodyFrequency() {
+        return this.bodyFrequency;
+    }
+
+    /**
+     *
+     * @return the first position of the keyword in the title, -1 if it is missing
+     */
+    public int getTitleFirstIndex() {
+        return titleFrequency == 0 ? -1 : titlePositions[0];
+    }
+
+    /**
+     *
+     * @return the first position of the keyword in the body, -1 if it is missing
+     */
+    public int getBodyFirstIndex() {
+        return bodyFrequency == 0 ? -1 : bodyPositions[0];
+    }
+
+    /**
+     *
+     * @return every position of the keyword in the title, in increasing order; it must not be changed
+     */
+    public int[] getTitlePositions() {
+        if (titlePositions.length == titleFrequency) {
+            return titlePositions;
+        }
+        return titleFrequency == 0 ? NO_POSITIONS : Arrays.copyOf(titlePositions, titleFrequency);
+    }
+
+    /**
+     *
+     * @return every position of the keyword in the body, in increasing order; it must not be changed
+     */
+    public int[] getBodyPositions() {
+        if (bodyPositions.length == bodyFrequency) {
+            return bodyPositions;
+        }
+        return bodyFrequency == 0 ? NO_POSITIONS : Arrays.copyOf(bodyPositions, bodyFrequency);
+    }
+
+    /**
+     *
+     * @return the number of times the keyword appears in the document
+     */
+    public int getFrequency() {
+        return this.titleFrequency + this.bodyFrequency;
+    }
+
+    /**
+     *
+     * @return the first position of the keyword in the document
+     * @requires <pre> the same rule as Query.matchAgainst(): if the keyword is missing from
+     * the title or the body, the other position is used, otherwise the smaller one </pre>
+     */
+    public int getFirstIndex() {
+        return firstIndex(getTitleFirstIndex(), getBodyFirstIndex());
+    }
+
+    /**
+     *
+     * @param titleFirstIndex the first position in the title, -1 if missing
+     * @param bodyFirstIndex the first position in the body, -1 if missing
+     * @return the first position of a keyword in a document, see getFirstIndex()
+     */
+    static int firstIndex(int titleFirstIndex, int bodyFirstIndex) {
+        if (titleFirstIndex < 1 || bodyFirstIndex < 1) {
+            return Math.max(titleFirstIndex, bodyFirstIndex);
+        }
+        return Math.min(titleFirstIndex, bodyFirstIndex);
+    }
+}
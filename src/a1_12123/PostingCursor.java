@@ -0,0 +1,140 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A PostingCursor walks a postings list in increasing docId order.
+ * It only moves forward: advance() skips to a docId, and the positions of a posting
+ * are only decoded when posting() asks for them
+ */
+abstract class PostingCursor {
+
+    /**
+     * the docId of an exhausted cursor
+     */
+    static final int NO_MORE = Integer.MAX_VALUE;
+
+    /**
+     *
+     * @return the docId of the current posting, NO_MORE after the last one
+     */
+    abstract int docId();
+
+    /**
+     *
+     * @effects move to the next posting
+     * @requires docId() != NO_MORE
+     */
+    abstract void next();
+
+    /**
+     *
+     * @param target
+     * @return the docId of the first posting whose docId is at least target, NO_MORE if there is none
+     * @effects move to that posting, the cursor stays where it is if it is already there
+     */
+    abstract int advance(int target);
+
+    /**
+     *
+     * @return the current posting with its positions
+     * @requires docId() != NO_MORE
+     */
+    abstract Posting posting();
+
+    /**
+     *
+     * @return the number of postings of the list, to visit the shortest lists first
+     */
+    abstract int size();
+
+    /**
+     *
+     * @param cursors
+     * @return <pre> a cursor over the documents of any of the cursors, whose posting holds the
+     * positions of all of them; the lists are merged as the cursor moves </pre>
+     */
+    static PostingCursor union(List<PostingCursor> cursors) {
+        if (cursors.size() == 1) {
+            return cursors.get(0);
+        }
+        return new Union(cursors);
+    }
+
+    /**
+     * Union merges several cursors with a heap, the one with the smallest docId on top
+     */
+    private static class Union extends PostingCursor {
+        private PriorityQueue<PostingCursor> heap;
+        private int size;
+
+        Union(List<PostingCursor> cursors) {
+            this.heap = new PriorityQueue<>(Math.max(1, cursors.size()),
+                    (c1, c2) -> Integer.compare(c1.docId(), c2.docId()));
+            for (PostingCursor cursor : cursors) {
+                size += cursor.size();
+                if (cursor.docId() != NO_MORE) {
+                    heap.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        int docId() {
+            return heap.isEmpty() ? NO_MORE : heap.peek().docId();
+        }
+
+        @Override
+        void next() {
+            int docId = docId();
+            while (!heap.isEmpty() && heap.peek().docId() == docId) {
+                PostingCursor cursor = heap.poll();
+                cursor.next();
+                if (cursor.docId() != NO_MORE) {
+                    heap.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        int advance(int target) {
+            while (!heap.isEmpty() && heap.peek().docId() < target) {
+                PostingCursor cursor = heap.poll();
+                if (cursor.advance(target) != NO_MORE) {
+                    heap.add(cursor);
+                }
+            }
+            return docId();
+        }
+
+        @Override
+        Posting posting() {
+            int docId = docId();
+            // take the cursors at the document off the heap, and put them back unchanged
+            List<PostingCursor> found = new ArrayList<>();
+            while (!heap.isEmpty() && heap.peek().docId() == docId) {
+                found.add(heap.poll());
+            }
+            if (found.size() == 1) {
+                heap.add(found.get(0));
+                return found.get(0).posting();
+            }
+            int[] title = new int[0];
+            int[] body = new int[0];
+            for (PostingCursor cursor : found) {
+                Posting posting = cursor.posting();
+                title = Query.merge(title, posting.getTitlePositions(), posting.getTitlePositions().length);
+                body = Query.merge(body, posting.getBodyPositions(), posting.getBodyPositions().length);
+            }
+            heap.addAll(found);
+            return new Posting(docId, title, body);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+}
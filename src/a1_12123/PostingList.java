@@ -0,0 +1,531 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PostingList is the compressed postings list of one term.
+ * Postings are grouped in blocks of BLOCK postings. A full block stores its docId gaps
+ * bit-packed at the width fitting most of them, the few larger gaps patched after it
+ * (a PForDelta-like codec), then the title and body frequencies and the gaps between
+ * positions as variable-byte ints. The postings after the last full block are kept as
+ * variable-byte ints until the block fills up. The last docId and the offset of every
+ * full block are the skip data: a cursor only decodes the blocks it lands in, and the
+ * positions of a posting only when they are asked for.
+ * Like Index, a list only grows at its end, so copy() shares the encoded blocks
+ */
+final class PostingList {
+
+    /**
+     * the number of postings of a full block
+     */
+    static final int BLOCK = 128;
+
+    /**
+     * a list without any posting
+     */
+    static final PostingList EMPTY = new PostingList();
+
+    /**
+     * private attributes
+     */
+    // the encoded full blocks, only the first length bytes are used
+    private byte[] data;
+    private int length;
+    // the skip data: the last docId of every full block and where it starts in data
+    private int[] blockLastDocs;
+    private int[] blockOffsets;
+    private int blocks;
+    // the postings after the last full block, one after the other, and how many they are
+    private byte[] tail;
+    private int tailLength;
+    private int tailSize;
+    // the number of postings and the docIds of the first and the last one
+    private int size;
+    private int firstDocId;
+    private int lastDocId;
+
+    /**
+     * A constructor of class PostingList
+     * @effects initialize an empty list
+     */
+    PostingList() {
+        this.data = new byte[0];
+        this.blockLastDocs = new int[0];
+        this.blockOffsets = new int[0];
+        this.tail = new byte[0];
+        this.lastDocId = -1;
+    }
+
+    /**
+     * A constructor sharing the full blocks of another list
+     * @param other
+     */
+    private PostingList(PostingList other) {
+        this.data = other.data;
+        this.length = other.length;
+        this.blockLastDocs = other.blockLastDocs;
+        this.blockOffsets = other.blockOffsets;
+        this.blocks = other.blocks;
+        this.tail = Arrays.copyOf(other.tail, other.tailLength);
+        this.tailLength = other.tailLength;
+        this.tailSize = other.tailSize;
+        this.size = other.size;
+        this.firstDocId = other.firstDocId;
+        this.lastDocId = other.lastDocId;
+    }
+
+    /**
+     *
+     * @return <pre> a list with the same postings that can be added to without changing this one,
+     * the full blocks are shared and only the postings after them are copied </pre>
+     * @requires only the latest copy is ever added to
+     */
+    PostingList copy() {
+        return new PostingList(this);
+    }
+
+    /**
+     *
+     * @return the number of postings
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     *
+     * @return the number of bytes of the encoded postings
+     */
+    long getEncodedBytes() {
+        return (long) length + tailLength + 8L * blocks;
+    }
+
+    /**
+     *
+     * @param posting
+     * @effects append the posting at the end of the list
+     * @requires its docId is larger than the ones already in the list
+     */
+    void add(Posting posting) {
+        int[] title = posting.getTitlePositions();
+        int[] body = posting.getBodyPositions();
+        int room = 5 * (3 + title.length + body.length);
+        if (tailLength + room > tail.length) {
+            tail = Arrays.copyOf(tail, Math.max(tailLength + room, tail.length * 2));
+        }
+        tailLength = writeInt(tail, tailLength, posting.getDocId() - lastDocId);
+        tailLength = writeInt(tail, tailLength, title.length);
+        tailLength = writeInt(tail, tailLength, body.length);
+        tailLength = writePositions(tail, tailLength, title);
+        tailLength = writePositions(tail, tailLength, body);
+        if (size == 0) {
+            firstDocId = posting.getDocId();
+        }
+        lastDocId = posting.getDocId();
+        size++;
+        tailSize++;
+        if (tailSize == BLOCK) {
+            flushBlock();
+        }
+    }
+
+    /**
+     *
+     * @return a cursor at the first posting of the list
+     */
+    PostingCursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     *
+     * @return every posting of the list, decoded
+     */
+    List<Posting> toList() {
+        List<Posting> postings = new ArrayList<>(size);
+        for (PostingCursor cursor = cursor(); cursor.docId() != PostingCursor.NO_MORE; cursor.next()) {
+            postings.add(cursor.posting());
+        }
+        return postings;
+    }
+
+    /**
+     *
+     * @effects encode the BLOCK postings after the last full block as a new full block
+     */
+    private void flushBlock() {
+        // read the postings back, the bytes of their positions are copied as they are
+        int[] gaps = new int[BLOCK];
+        int[] frequencies = new int[2 * BLOCK];
+        byte[] positions = new byte[tailLength];
+        int positionsLength = 0;
+        Reader in = new Reader(tail, 0);
+        for (int i = 0; i < BLOCK; i++) {
+            gaps[i] = in.read();
+            frequencies[2 * i] = in.read();
+            frequencies[2 * i + 1] = in.read();
+            int start = in.offset;
+            in.skip(frequencies[2 * i] + frequencies[2 * i + 1]);
+            System.arraycopy(tail, start, positions, positionsLength, in.offset - start);
+            positionsLength += in.offset - start;
+        }
+        // the widest block: width and exception count, the packed gaps, every gap as an exception
+        int room = 2 + 4 * BLOCK + 6 * BLOCK + 10 * BLOCK + positionsLength;
+        if (length + room > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + room, data.length * 2));
+        }
+        if (blocks == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, Math.max(4, blocks * 2));
+            blockLastDocs = Arrays.copyOf(blockLastDocs, blockOffsets.length);
+        }
+        blockOffsets[blocks] = length;
+        length = writeGaps(data, length, gaps);
+        for (int frequency : frequencies) {
+            length = writeInt(data, length, frequency);
+        }
+        System.arraycopy(positions, 0, data, length, positionsLength);
+        length += positionsLength;
+        blockLastDocs[blocks] = lastDocId;
+        blocks++;
+        tailLength = 0;
+        tailSize = 0;
+    }
+
+    /**
+     *
+     * @param out
+     * @param offset
+     * @param gaps BLOCK positive ints
+     * @return the offset after the gaps written to out at offset
+     * @requires <pre> the width is the one with the fewest bytes, counting about 3 bytes for every
+     * gap that does not fit; the low bits of every gap are packed, then the index and the high
+     * bits of every gap that does not fit </pre>
+     */
+    private static int writeGaps(byte[] out, int offset, int[] gaps) {
+        int[] widths = new int[33];
+        for (int gap : gaps) {
+            widths[32 - Integer.numberOfLeadingZeros(gap)]++;
+        }
+        int width = 32;
+        int bestCost = Integer.MAX_VALUE;
+        int exceptions = 0;
+        for (int b = 32; b >= 1; b--) {
+            int cost = BLOCK / 8 * b + 3 * exceptions;
+            if (cost <= bestCost) {
+                bestCost = cost;
+                width = b;
+            }
+            exceptions += widths[b];
+        }
+        long mask = (1L << width) - 1;
+        int count = 0;
+        for (int gap : gaps) {
+            if ((gap & 0xFFFFFFFFL) > mask) {
+                count++;
+            }
+        }
+        out[offset++] = (byte) width;
+        out[offset++] = (byte) count;
+        long bits = 0;
+        int used = 0;
+        for (int gap : gaps) {
+            bits |= (gap & mask) << used;
+            used += width;
+            while (used >= 8) {
+                out[offset++] = (byte) bits;
+                bits >>>= 8;
+                used -= 8;
+            }
+        }
+        for (int i = 0; i < gaps.length; i++) {
+            if ((gaps[i] & 0xFFFFFFFFL) > mask) {
+                out[offset++] = (byte) i;
+                offset = writeInt(out, offset, (int) ((gaps[i] & 0xFFFFFFFFL) >>> width));
+            }
+        }
+        return offset;
+    }
+
+    /**
+     *
+     * @param out
+     * @param offset
+     * @param positions increasing positions
+     * @return the offset after the first position and the gaps between the next ones
+     */
+    private static int writePositions(byte[] out, int offset, int[] positions) {
+        int previous = 0;
+        for (int position : positions) {
+            offset = writeInt(out, offset, position - previous);
+            previous = position;
+        }
+        return offset;
+    }
+
+    /**
+     *
+     * @param out
+     * @param offset
+     * @param value a non-negative int
+     * @return the offset after the value written to out in 7-bit groups, lowest first,
+     * the high bit telling that more groups follow
+     */
+    private static int writeInt(byte[] out, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[offset++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     *
+     * @param list sorted values
+     * @param from the first index to look at
+     * @param to the index after the last one to look at
+     * @param target
+     * @return the first index in [from, to) whose value is at least target, to if none
+     * @requires galloping like Proximity.gallop(), but never past to
+     */
+    private static int gallop(int[] list, int from, int to, int target) {
+        if (from >= to || list[from] >= target) {
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        while (low + step < to && list[low + step] < target) {
+            low += step;
+            step *= 2;
+        }
+        int high = Math.min(low + step, to);
+        while (low + 1 < high) {
+            int middle = (low + high) >>> 1;
+            if (list[middle] < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Reader reads variable-byte ints one after the other
+     */
+    private static class Reader {
+        private byte[] in;
+        private int offset;
+
+        Reader(byte[] in, int offset) {
+            this.in = in;
+            this.offset = offset;
+        }
+
+        /**
+         *
+         * @return the next int, see writeInt()
+         */
+        int read() {
+            byte b = in[offset++];
+            if (b >= 0) {
+                // most gaps and frequencies fit in one byte
+                return b;
+            }
+            int value = b & 0x7F;
+            int shift = 7;
+            do {
+                b = in[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        /**
+         *
+         * @param count
+         * @effects move past the next count ints
+         */
+        void skip(int count) {
+            for (int i = 0; i < count; i++) {
+                while (in[offset++] < 0) {
+                    // a continued int
+                }
+            }
+        }
+    }
+
+    /**
+     * Cursor decodes the list one block at a time: the docIds and frequencies of the block
+     * it lands in, and the positions of a posting when they are asked for.
+     * Nothing is decoded before the cursor moves past the first posting or reads it
+     */
+    private class Cursor extends PostingCursor {
+        // the decoded block, -1 before the first one, blocks for the postings after the last full block
+        private int block;
+        private int[] docIds;
+        private int[] titleFrequencies;
+        private int[] bodyFrequencies;
+        // where the positions of the first known postings of the block start
+        private int[] positionOffsets;
+        private int known;
+        private Reader reader;
+        private int count;
+        private int index;
+        private int docId;
+
+        Cursor() {
+            int capacity = Math.min(size, BLOCK);
+            this.docIds = new int[capacity];
+            this.titleFrequencies = new int[capacity];
+            this.bodyFrequencies = new int[capacity];
+            this.positionOffsets = new int[capacity];
+            this.block = -1;
+            this.docId = size > 0 ? firstDocId : NO_MORE;
+        }
+
+        /**
+         *
+         * @param b
+         * @effects decode the docIds and the frequencies of the block, and move to its first posting
+         */
+        private void load(int b) {
+            block = b;
+            index = 0;
+            int previous = b == 0 ? -1 : blockLastDocs[b - 1];
+            if (b < blocks) {
+                int offset = blockOffsets[b];
+                int width = data[offset++];
+                int exceptions = data[offset++] & 0xFF;
+                // unpack the low bits of every gap
+                long mask = (1L << width) - 1;
+                long bits = 0;
+                int used = 0;
+                for (int i = 0; i < BLOCK; i++) {
+                    while (used < width) {
+                        bits |= (data[offset++] & 0xFFL) << used;
+                        used += 8;
+                    }
+                    docIds[i] = (int) (bits & mask);
+                    bits >>>= width;
+                    used -= width;
+                }
+                // patch the high bits of the larger gaps
+                reader = new Reader(data, offset);
+                for (int e = 0; e < exceptions; e++) {
+                    int i = data[reader.offset++] & 0xFF;
+                    docIds[i] |= reader.read() << width;
+                }
+                for (int i = 0; i < BLOCK; i++) {
+                    previous += docIds[i];
+                    docIds[i] = previous;
+                    titleFrequencies[i] = reader.read();
+                    bodyFrequencies[i] = reader.read();
+                }
+                positionOffsets[0] = reader.offset;
+                known = 1;
+                count = BLOCK;
+            } else {
+                reader = new Reader(tail, 0);
+                for (int i = 0; i < tailSize; i++) {
+                    previous += reader.read();
+                    docIds[i] = previous;
+                    titleFrequencies[i] = reader.read();
+                    bodyFrequencies[i] = reader.read();
+                    positionOffsets[i] = reader.offset;
+                    reader.skip(titleFrequencies[i] + bodyFrequencies[i]);
+                }
+                known = tailSize;
+                count = tailSize;
+            }
+            docId = docIds[0];
+        }
+
+        @Override
+        int docId() {
+            return docId;
+        }
+
+        @Override
+        void next() {
+            if (block < 0) {
+                load(0);
+            }
+            index++;
+            if (index < count) {
+                docId = docIds[index];
+            } else if (block < blocks && (block + 1 < blocks || tailSize > 0)) {
+                load(block + 1);
+            } else {
+                docId = NO_MORE;
+            }
+        }
+
+        @Override
+        int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            if (lastDocId < target) {
+                index = count;
+                docId = NO_MORE;
+                return docId;
+            }
+            if (block < 0) {
+                load(0);
+            }
+            int last = block < blocks ? blockLastDocs[block] : lastDocId;
+            if (last < target) {
+                // the skip data tells the block holding the target, the ones before are not decoded
+                load(gallop(blockLastDocs, block + 1, blocks, target));
+            }
+            index = gallop(docIds, index, count, target);
+            docId = docIds[index];
+            return docId;
+        }
+
+        @Override
+        Posting posting() {
+            if (block < 0) {
+                load(0);
+            }
+            // find where the positions of the posting start, after the ones of the postings before it
+            while (known <= index) {
+                reader.offset = positionOffsets[known - 1];
+                reader.skip(titleFrequencies[known - 1] + bodyFrequencies[known - 1]);
+                positionOffsets[known++] = reader.offset;
+            }
+            reader.offset = positionOffsets[index];
+            int[] title = readPositions(titleFrequencies[index]);
+            int[] body = readPositions(bodyFrequencies[index]);
+            // the positions of the next posting start here, a walk in order never skips any
+            if (known == index + 1 && known < count) {
+                positionOffsets[known++] = reader.offset;
+            }
+            return new Posting(docId, title, body);
+        }
+
+        /**
+         *
+         * @param frequency
+         * @return the next frequency positions, from the first one and the gaps between them
+         */
+        private int[] readPositions(int frequency) {
+            int[] positions = new int[frequency];
+            int previous = 0;
+            for (int i = 0; i < frequency; i++) {
+                previous += reader.read();
+                positions[i] = previous;
+            }
+            return positions;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Proximity is a positional condition of a Query: either a quoted phrase, whose words must
+ * follow each other in that order, or two words joined by NEAR/k, which must be at most
+ * k words apart in any order. The words must be found in the same line, title or body.
+ * It is checked on sorted position lists with galloping search, so a check costs about
+ * the logarithm of the lists instead of a scan of the document
+ */
+class Proximity {
+
+    /**
+     * private attributes
+     */
+    // the case-folded words, and their term ids in the last dictionary they were looked up in
+    private String[] terms;
+    private volatile TermDictionary.Lookup termIds;
+    // 0 for a phrase, the largest distance between the two words of NEAR/k
+    private int distance;
+
+    /**
+     * A constructor of class Proximity
+     * @param terms the case-folded words
+     * @param distance 0 for a phrase, k for NEAR/k
+     */
+    private Proximity(String[] terms, int distance) {
+        this.terms = terms;
+        this.distance = distance;
+    }
+
+    /**
+     *
+     * @param terms the case-folded words of the phrase, in order
+     * @return the condition that the words follow each other
+     */
+    static Proximity phrase(String[] terms) {
+        return new Proximity(terms, 0);
+    }
+
+    /**
+     *
+     * @param first the case-folded word before NEAR/k
+     * @param second the case-folded word after NEAR/k
+     * @param distance k
+     * @return the condition that the words are at most k words apart
+     * @requires distance > 0
+     */
+    static Proximity near(String first, String second, int distance) {
+        return new Proximity(new String[]{first, second}, distance);
+    }
+
+    /**
+     *
+     * @return whether this is a phrase, otherwise it is NEAR/k
+     */
+    boolean isPhrase() {
+        return distance == 0;
+    }
+
+    /**
+     *
+     * @return the case-folded words
+     */
+    String[] getTerms() {
+        return this.terms;
+    }
+
+    /**
+     *
+     * @param dictionary the dictionary of the documents searched
+     * @return the term ids of the words, -1 for a word no document contains
+     * @requires <pre> the ids are kept for the dictionary, they are looked up again in another
+     * dictionary or while some word is unknown, since documents loaded later can bring new terms </pre>
+     */
+    int[] getTermIds(TermDictionary dictionary) {
+        TermDictionary.Lookup ids = dictionary.lookup(this.termIds, Arrays.asList(terms));
+        this.termIds = ids;
+        return ids.getIds();
+    }
+
+    /**
+     *
+     * @param positions the sorted positions of each word in one line, by word
+     * @return whether the condition holds in that line
+     */
+    boolean matches(int[][] positions) {
+        for (int[] list : positions) {
+            if (list.length == 0) {
+                return false;
+            }
+        }
+        if (isPhrase()) {
+            return matchesPhrase(positions);
+        }
+        // walk the shorter list and gallop in the longer one
+        int[] walked = positions[0].length <= positions[1].length ? positions[0] : positions[1];
+        int[] searched = walked == positions[0] ? positions[1] : positions[0];
+        int cursor = 0;
+        for (int position : walked) {
+            cursor = gallop(searched, cursor, position - distance);
+            if (cursor == searched.length) {
+                return false;
+            }
+            if (searched[cursor] <= position + distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param positions the sorted positions of each word of the phrase in one line
+     * @return whether some position p has word i at p + i for every i
+     * @requires <pre> leapfrog: a word missing at its place moves the start of the phrase
+     * to the next place that word can take, every list is only walked forward </pre>
+     */
+    private static boolean matchesPhrase(int[][] positions) {
+        int[] cursors = new int[positions.length];
+        int start = positions[0][0];
+        int word = 1;
+        while (word < positions.length) {
+            int[] list = positions[word];
+            cursors[word] = gallop(list, cursors[word], start + word);
+            if (cursors[word] == list.length) {
+                return false;
+            }
+            if (list[cursors[word]] == start + word) {
+                word++;
+                continue;
+            }
+            // the phrase can only start at the next position of the first word fitting this one
+            cursors[0] = gallop(positions[0], cursors[0], list[cursors[word]] - word);
+            if (cursors[0] == positions[0].length) {
+                return false;
+            }
+            start = positions[0][cursors[0]];
+            word = 1;
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param list sorted values
+     * @param from the first index to look at
+     * @param target
+     * @return the first index at or after from whose value is at least target, list.length if none
+     * @requires <pre> the distance is doubled until a value reaches the target, then the last
+     * step is binary searched, so finding a value k places ahead costs O(log k) </pre>
+     */
+    static int gallop(int[] list, int from, int target) {
+        if (from >= list.length || list[from] >= target) {
+            return from;
+        }
+        // list[low] < target
+        int low = from;
+        int step = 1;
+        while (low + step < list.length && list[low + step] < target) {
+            low += step;
+            step *= 2;
+        }
+        int high = Math.min(low + step, list.length);
+        // list[low] < target <= list[high], binary search in between
+        while (low + 1 < high) {
+            int middle = (low + high) >>> 1;
+            if (list[middle] < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+}
@@ -1,15 +1,40 @@
 package engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 /**
  * Query is the class to represent a user’s search query,
  * A Query object should store a list of keywords internally.
+ * A quoted "phrase" or two words joined by NEAR/k also add a positional condition
+ * that every matching document must meet, see Proximity.
+ * A keyword after + or next to AND is required, and a word after - or NOT is excluded:
+ * matching documents hold every required word and no excluded one. OR is the default.
+ * A word that is not a keyword, like a stop word or a word with punctuation, is never required.
+ * A keyword with * (any characters) or ? (one character) inside it, like design* or obj?ct,
+ * matches every word of the documents fitting it, see TermTrie. A keyword ending with ~1 or ~2
+ * (~ alone is ~2), like desgin~1, also matches the words at most that many edits away,
+ * see LevenshteinAutomaton
  */
 public class Query {
 
     private List<Word> keywords;
+    // case-folded keywords, and their term ids in the last dictionary they were looked up in
+    private String[] terms;
+    private volatile TermDictionary.Lookup termIds;
+    // the phrases and NEAR/k conditions, in order
+    private List<Proximity> proximities;
+    // case-folded required and excluded words, and their term ids in the last dictionary
+    private List<String> required;
+    private List<String> excluded;
+    private volatile TermDictionary.Lookup requiredIds;
+    private volatile TermDictionary.Lookup excludedIds;
+    // the positions of the wildcard and the fuzzy keywords, and the term ids they expand to
+    private BitSet wildcards;
+    private BitSet fuzzy;
+    private volatile Expansions expansions;
 
     /**
      * A constructor
@@ -17,7 +42,23 @@ public class Query {
      * @effects extract keywords from search phrases
      */
     public Query (String searchPhrase) {
-        this.keywords = extractKeywords(searchPhrase);
+        long start = Metrics.start();
+        this.keywords = new ArrayList<>();
+        this.proximities = new ArrayList<>();
+        this.required = new ArrayList<>();
+        this.excluded = new ArrayList<>();
+        this.wildcards = new BitSet();
+        this.fuzzy = new BitSet();
+        extractKeywords(searchPhrase);
+        this.terms = new String[keywords.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = TermDictionary.fold(keywords.get(i).getText());
+            if (wildcards.get(i) || fuzzy.get(i)) {
+                // a pattern never has a term id of its own
+                terms[i] = null;
+            }
+        }
+        Metrics.QUERY_PARSE.recordSince(start);
     }
 
     /**
@@ -28,87 +69,582 @@ public class Query {
         return this.keywords;
     }
 
+    /**
+     *
+     * @return the phrases and NEAR/k conditions every matching document must meet
+     */
+    List<Proximity> getProximities() {
+        return this.proximities;
+    }
+
+    /**
+     *
+     * @return whether the query has a phrase, a NEAR/k, a required or an excluded word
+     */
+    boolean hasConditions() {
+        return !proximities.isEmpty() || !required.isEmpty() || !excluded.isEmpty();
+    }
+
     /**
      *
      * @param d
      * @return a list of matches against the input document
      * @requires matches are sort by the first position of keywords in d
+     * @effects <pre> the title and the body are walked once, every word is looked up
+     * in a table of the keyword term ids and the words of the phrases and NEAR/k conditions;
+     * there are no matches if a condition is not met </pre>
      */
     public List<Match> matchAgainst(Doc d) {
+        long start = Metrics.start();
+        List<Match> matches = match(d);
+        Metrics.count(Metrics.DOCS_SCANNED, 1);
+        Metrics.count(Metrics.MATCHES_PRODUCED, matches.size());
+        Metrics.MATCH_AGAINST.recordSince(start);
+        return matches;
+    }
+
+    /**
+     *
+     * @param d
+     * @return the matches of matchAgainst(d)
+     */
+    private List<Match> match(Doc d) {
+        TermDictionary dictionary = d.getDictionary();
+        int[] ids = getTermIds(dictionary);
+        int[][] expanded = hasExpansions() ? getExpansions(dictionary) : null;
+        KeywordTable table = new KeywordTable(withExpansions(withConditionTerms(ids, dictionary), expanded));
+        // frequency and positions of every distinct keyword, in the title and in the body
+        int[] titleFrequency = new int[table.size()];
+        int[] bodyFrequency = new int[table.size()];
+        int[][] titlePositions = new int[table.size()][];
+        int[][] bodyPositions = new int[table.size()][];
+        // walk the title and the body once
+        countKeywords(d.getTitleTerms(), table, titleFrequency, titlePositions);
+        countKeywords(d.getBodyTerms(), table, bodyFrequency, bodyPositions);
+
         List<Match> matches = new ArrayList<>();
-        // get content of the document
-        List<Word> title = d.getTitle();
-        List<Word> body = d.getBody();
-        // loop to find the keyword in the content document
-        for (Word keyword : keywords) {
-            int titleFrequency = countWordFrequency(title, keyword);
-            int bodyFrequency = countWordFrequency(body, keyword);
-            if (titleFrequency > 0 || bodyFrequency > 0) {
-                int titlePosition = findWordPosition(title, keyword);
-                int bodyPosition = findWordPosition(body, keyword);
-                if (titlePosition < 1 || bodyPosition < 1) {
-                    matches.add(new Match(d, keyword, titleFrequency + bodyFrequency, Math.max(titlePosition, bodyPosition)));
-                } else {
-                    matches.add(new Match(d, keyword, titleFrequency + bodyFrequency, Math.min(titlePosition, bodyPosition)));
+        for (int termId : getRequiredTermIds(dictionary)) {
+            int slot = termId < 0 ? -1 : table.slotOf(termId);
+            if (slot < 0 || titleFrequency[slot] + bodyFrequency[slot] == 0) {
+                return matches;
+            }
+        }
+        for (int termId : getExcludedTermIds(dictionary)) {
+            int slot = termId < 0 ? -1 : table.slotOf(termId);
+            if (slot >= 0 && titleFrequency[slot] + bodyFrequency[slot] > 0) {
+                return matches;
+            }
+        }
+        for (Proximity proximity : proximities) {
+            int[] proximityIds = proximity.getTermIds(dictionary);
+            if (!proximityHolds(proximity, proximityIds, table, titleFrequency, titlePositions)
+                    && !proximityHolds(proximity, proximityIds, table, bodyFrequency, bodyPositions)) {
+                return matches;
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (expanded != null && expanded[i] != null) {
+                Match match = expandedMatch(d, keywords.get(i), expanded[i], table, titleFrequency, bodyFrequency,
+                        titlePositions, bodyPositions);
+                if (match != null) {
+                    matches.add(match);
                 }
+                continue;
+            }
+            int slot = ids[i] < 0 ? -1 : table.slotOf(ids[i]);
+            if (slot >= 0 && (titleFrequency[slot] > 0 || bodyFrequency[slot] > 0)) {
+                int firstIndex = Posting.firstIndex(titlePositions[slot][0], bodyPositions[slot][0]);
+                matches.add(new Match(d, keywords.get(i), titleFrequency[slot] + bodyFrequency[slot], firstIndex,
+                        Arrays.copyOf(titlePositions[slot], titleFrequency[slot]),
+                        Arrays.copyOf(bodyPositions[slot], bodyFrequency[slot])));
             }
         }
         matches.sort((m1, m2) -> m1.getFirstIndex() - m2.getFirstIndex());
         return matches;
     }
 
+    /**
+     *
+     * @param dictionary the dictionary of the documents searched
+     * @return the term ids of the keywords, -1 for a keyword no document contains and for
+     * a wildcard or a fuzzy keyword
+     * @requires <pre> the ids are kept for the dictionary, they are looked up again in another
+     * dictionary or while some keyword is unknown, since documents loaded later can bring new terms </pre>
+     */
+    int[] getTermIds(TermDictionary dictionary) {
+        TermDictionary.Lookup ids = dictionary.lookup(this.termIds, Arrays.asList(terms));
+        this.termIds = ids;
+        return ids.getIds();
+    }
+
+    /**
+     *
+     * @return whether some keyword is a wildcard or a fuzzy keyword
+     */
+    boolean hasExpansions() {
+        return !wildcards.isEmpty() || !fuzzy.isEmpty();
+    }
+
+    /**
+     *
+     * @param dictionary the dictionary of the documents searched
+     * @return <pre> for every keyword, the term ids of the words a wildcard or a fuzzy keyword
+     * matches, null for a plain keyword; stop words are left out, like from the other keywords </pre>
+     * @requires <pre> the keywords are expanded again when the dictionary has grown,
+     * since documents loaded later can bring new words matching them, or the stop words changed </pre>
+     */
+    int[][] getExpansions(TermDictionary dictionary) {
+        TermTrie trie = dictionary.trie();
+        StopWords stopWords = Word.getStopWordTable();
+        Expansions current = this.expansions;
+        if (current != null && current.trie == trie && current.stopWords == stopWords) {
+            return current.termIds;
+        }
+        int[][] termIds = new int[keywords.size()][];
+        for (int i = wildcards.nextSetBit(0); i >= 0; i = wildcards.nextSetBit(i + 1)) {
+            termIds[i] = withoutStopWords(trie.wildcard(TermDictionary.fold(keywords.get(i).getText())),
+                    dictionary, stopWords);
+        }
+        for (int i = fuzzy.nextSetBit(0); i >= 0; i = fuzzy.nextSetBit(i + 1)) {
+            String text = TermDictionary.fold(keywords.get(i).getText());
+            int tilde = text.lastIndexOf('~');
+            int distance = tilde + 1 < text.length() ? text.charAt(tilde + 1) - '0' : LevenshteinAutomaton.MAX_DISTANCE;
+            termIds[i] = withoutStopWords(trie.fuzzy(new LevenshteinAutomaton(text.substring(0, tilde), distance)),
+                    dictionary, stopWords);
+        }
+        this.expansions = new Expansions(trie, stopWords, termIds);
+        return termIds;
+    }
+
+    /**
+     *
+     * @param termIds
+     * @param dictionary the dictionary of the term ids
+     * @param stopWords
+     * @return the term ids whose words are not stop words, in the same order
+     */
+    private static int[] withoutStopWords(int[] termIds, TermDictionary dictionary, StopWords stopWords) {
+        int[] kept = new int[termIds.length];
+        int size = 0;
+        for (int termId : termIds) {
+            if (!stopWords.contains(dictionary.getTerm(termId))) {
+                kept[size++] = termId;
+            }
+        }
+        return size == termIds.length ? termIds : Arrays.copyOf(kept, size);
+    }
+
+    /**
+     *
+     * @param dictionary the dictionary of the documents searched
+     * @return the term ids of the required words, -1 for a word no document contains
+     * @requires the same as getTermIds()
+     */
+    int[] getRequiredTermIds(TermDictionary dictionary) {
+        TermDictionary.Lookup ids = dictionary.lookup(this.requiredIds, required);
+        this.requiredIds = ids;
+        return ids.getIds();
+    }
+
+    /**
+     *
+     * @param dictionary the dictionary of the documents searched
+     * @return the term ids of the excluded words, -1 for a word no document contains
+     * @requires the same as getTermIds()
+     */
+    int[] getExcludedTermIds(TermDictionary dictionary) {
+        TermDictionary.Lookup ids = dictionary.lookup(this.excludedIds, excluded);
+        this.excludedIds = ids;
+        return ids.getIds();
+    }
+
+    /**
+     *
+     * @param ids the term ids of the keywords
+     * @param dictionary the dictionary of the ids
+     * @return the ids followed by the term ids of the required and excluded words and of the proximities
+     */
+    private int[] withConditionTerms(int[] ids, TermDictionary dictionary) {
+        if (!hasConditions()) {
+            return ids;
+        }
+        int[] requiredTerms = getRequiredTermIds(dictionary);
+        int[] excludedTerms = getExcludedTermIds(dictionary);
+        int size = ids.length + requiredTerms.length + excludedTerms.length;
+        for (Proximity proximity : proximities) {
+            size += proximity.getTerms().length;
+        }
+        int[] all = Arrays.copyOf(ids, size);
+        size = ids.length;
+        System.arraycopy(requiredTerms, 0, all, size, requiredTerms.length);
+        size += requiredTerms.length;
+        System.arraycopy(excludedTerms, 0, all, size, excludedTerms.length);
+        size += excludedTerms.length;
+        for (Proximity proximity : proximities) {
+            int[] proximityIds = proximity.getTermIds(dictionary);
+            System.arraycopy(proximityIds, 0, all, size, proximityIds.length);
+            size += proximityIds.length;
+        }
+        return all;
+    }
+
+    /**
+     *
+     * @param ids the term ids of the keywords and of the conditions
+     * @param expanded the expansions of the keywords, null if there is none
+     * @return the ids followed by the term ids of every expansion
+     */
+    private static int[] withExpansions(int[] ids, int[][] expanded) {
+        if (expanded == null) {
+            return ids;
+        }
+        int size = ids.length;
+        for (int[] termIds : expanded) {
+            size += termIds == null ? 0 : termIds.length;
+        }
+        int[] all = Arrays.copyOf(ids, size);
+        size = ids.length;
+        for (int[] termIds : expanded) {
+            if (termIds != null) {
+                System.arraycopy(termIds, 0, all, size, termIds.length);
+                size += termIds.length;
+            }
+        }
+        return all;
+    }
+
+    /**
+     *
+     * @param d
+     * @param keyword a wildcard or a fuzzy keyword
+     * @param termIds the term ids it expands to
+     * @param table
+     * @param titleFrequency
+     * @param bodyFrequency
+     * @param titlePositions
+     * @param bodyPositions
+     * @return one match for all the words of d fitting the keyword, null if there is none
+     */
+    private static Match expandedMatch(Doc d, Word keyword, int[] termIds, KeywordTable table,
+                                       int[] titleFrequency, int[] bodyFrequency,
+                                       int[][] titlePositions, int[][] bodyPositions) {
+        int[] title = new int[0];
+        int[] body = new int[0];
+        for (int termId : termIds) {
+            int slot = table.slotOf(termId);
+            title = merge(title, titlePositions[slot], titleFrequency[slot]);
+            body = merge(body, bodyPositions[slot], bodyFrequency[slot]);
+        }
+        if (title.length + body.length == 0) {
+            return null;
+        }
+        int firstIndex = Posting.firstIndex(title.length > 0 ? title[0] : -1, body.length > 0 ? body[0] : -1);
+        return new Match(d, keyword, title.length + body.length, firstIndex, title, body);
+    }
+
+    /**
+     *
+     * @param positions sorted positions
+     * @param more sorted positions, only the first count ones are used
+     * @param count
+     * @return the positions of both, sorted
+     */
+    static int[] merge(int[] positions, int[] more, int count) {
+        if (count == 0) {
+            return positions;
+        }
+        int[] merged = Arrays.copyOf(positions, positions.length + count);
+        System.arraycopy(more, 0, merged, positions.length, count);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     *
+     * @param proximity
+     * @param ids the term ids of the words of the proximity
+     * @param table
+     * @param frequency the frequency of every slot in the line
+     * @param positions the positions of every slot in the line
+     * @return whether the condition holds in the line
+     */
+    private static boolean proximityHolds(Proximity proximity, int[] ids, KeywordTable table, int[] frequency,
+                                          int[][] positions) {
+        int[][] lists = new int[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            int slot = ids[i] < 0 ? -1 : table.slotOf(ids[i]);
+            if (slot < 0 || frequency[slot] == 0) {
+                return false;
+            }
+            lists[i] = Arrays.copyOf(positions[slot], frequency[slot]);
+        }
+        return proximity.matches(lists);
+    }
+
+    /**
+     *
+     * @param words the term ids of the title or the body
+     * @param table
+     * @param frequency
+     * @param positions
+     * @effects <pre> count every keyword in the words and record its positions; only the first
+     * frequency[slot] positions are used, a missing keyword gets the single position -1 </pre>
+     */
+    private static void countKeywords(int[] words, KeywordTable table, int[] frequency, int[][] positions) {
+        for (int slot = 0; slot < positions.length; slot++) {
+            positions[slot] = new int[]{-1};
+        }
+        for (int i = 0; i < words.length; i++) {
+            int slot = table.slotOf(words[i]);
+            if (slot >= 0) {
+                if (frequency[slot] == positions[slot].length) {
+                    positions[slot] = Arrays.copyOf(positions[slot], frequency[slot] * 2);
+                }
+                positions[slot][frequency[slot]++] = i;
+            }
+        }
+    }
+
     /**
      *
      * @param searchPhrase
-     * @return a list of keywords
+     * @effects <pre> add the keywords of the search phrase, and a Proximity for every quoted
+     * phrase and every NEAR/k between two words; the part after an unclosed quote is a phrase </pre>
      */
-    private List<Word> extractKeywords(String searchPhrase) {
-        // split the search phrase into individual words
-        String[] words = searchPhrase.split(" ");
-        List<Word> keywords = new ArrayList<>();
+    private void extractKeywords(String searchPhrase) {
+        int from = 0;
+        boolean quoted = false;
+        while (from <= searchPhrase.length()) {
+            int to = searchPhrase.indexOf('"', from);
+            if (to < 0) {
+                to = searchPhrase.length();
+            }
+            if (quoted) {
+                extractPhrase(searchPhrase, from, to);
+            } else {
+                extractWords(searchPhrase, from, to);
+            }
+            quoted = !quoted;
+            from = to + 1;
+        }
+    }
+
+    /**
+     *
+     * @param searchPhrase
+     * @param from
+     * @param to
+     * @effects add the keywords of the part [from, to) of the search phrase and its NEAR/k conditions
+     */
+    private void extractWords(String searchPhrase, int from, int to) {
+        // scan the search phrase word by word
+        Tokenizer tokens = new Tokenizer(searchPhrase, from, to);
+        // the word before the last NEAR/k, and k
+        String nearWord = null;
+        int nearDistance = 0;
+        String previous = null;
+        // the last word if it is a keyword that is not excluded, what AND makes required
+        String previousKeyword = null;
+        // the operator before the next word: +, - or AND, NOT
+        char operator = ' ';
         // iterate through the words and create Word objects from them
-        for (String word : words) {
-            if (!word.isEmpty()) {
-                Word keyword = Word.createWord(word);
-                // check if it is keyword
-                if (keyword.isKeyword()) {
-                    keywords.add(keyword);
+        while (tokens.next()) {
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            int start = tokens.getStart();
+            int end = tokens.getEnd();
+            int distance = nearDistance(searchPhrase, start, end);
+            if (distance > 0) {
+                nearWord = previous;
+                nearDistance = distance;
+                continue;
+            }
+            if (searchPhrase.startsWith("AND", start) && end - start == 3) {
+                // both sides of AND are required, like + they must be keywords
+                if (previousKeyword != null && !required.contains(previousKeyword)) {
+                    required.add(previousKeyword);
+                }
+                operator = '+';
+                continue;
+            }
+            if (searchPhrase.startsWith("NOT", start) && end - start == 3) {
+                operator = '-';
+                continue;
+            }
+            if (searchPhrase.startsWith("OR", start) && end - start == 2) {
+                operator = ' ';
+                continue;
+            }
+            if (end - start > 1 && (searchPhrase.charAt(start) == '+' || searchPhrase.charAt(start) == '-')) {
+                operator = searchPhrase.charAt(start);
+                start++;
+            }
+            Word pattern = wildcard(searchPhrase, start, end);
+            BitSet kind = wildcards;
+            if (pattern == null) {
+                pattern = fuzzy(searchPhrase, start, end);
+                kind = fuzzy;
+            }
+            if (pattern != null) {
+                // a wildcard or a fuzzy keyword is only a keyword: it cannot be excluded, required or in a NEAR/k
+                if (operator != '-') {
+                    kind.set(keywords.size());
+                    keywords.add(pattern);
                 }
+                operator = ' ';
+                previous = null;
+                previousKeyword = null;
+                nearWord = null;
+                continue;
+            }
+            Word keyword = operator == ' ' ? tokens.toWord() : Word.createWord(searchPhrase.substring(start, end));
+            previous = TermDictionary.fold(keyword.getText());
+            previousKeyword = null;
+            if (operator == '-') {
+                // an excluded word is not matched
+                excluded.add(previous);
+            } else if (keyword.isKeyword()) {
+                // a required word goes through the same rules as every keyword
+                if (operator == '+') {
+                    required.add(previous);
+                }
+                keywords.add(keyword);
+                previousKeyword = previous;
+            }
+            operator = ' ';
+            if (nearWord != null) {
+                proximities.add(Proximity.near(nearWord, previous, nearDistance));
             }
+            nearWord = null;
         }
-        return keywords;
     }
 
     /**
      *
-     * @param wordList
-     * @param word
-     * @return the frequency of a word in a list of word
+     * @param s
+     * @param start the start of a raw word
+     * @param end the end of the raw word
+     * @return <pre> the word as a wildcard keyword if its text has a letter and a * anywhere or
+     * a ? before its last letter; a ? at the end is punctuation, like in "what?". null otherwise </pre>
      */
-    private int countWordFrequency(List<Word> wordList, Word word) {
-        int frequency = 0;
-        for (Word w : wordList) {
-            if (w.equals(word)) {
-                frequency++;
+    private static Word wildcard(String s, int start, int end) {
+        int textStart = start;
+        while (textStart < end && !Character.isLetter(s.charAt(textStart))
+                && s.charAt(textStart) != '*' && s.charAt(textStart) != '?') {
+            textStart++;
+        }
+        int textEnd = end;
+        while (textEnd > textStart && !Character.isLetter(s.charAt(textEnd - 1)) && s.charAt(textEnd - 1) != '*') {
+            textEnd--;
+        }
+        boolean wild = false;
+        boolean letter = false;
+        for (int i = textStart; i < textEnd; i++) {
+            char c = s.charAt(i);
+            wild |= c == '*' || c == '?';
+            letter |= Character.isLetter(c);
+        }
+        if (!wild || !letter || textEnd - textStart > TermTrie.MAX_PATTERN) {
+            return null;
+        }
+        return new Word(s.substring(start, textStart), s.substring(textStart, textEnd), s.substring(textEnd, end));
+    }
+
+    /**
+     *
+     * @param s
+     * @param start the start of a raw word
+     * @param end the end of the raw word
+     * @return <pre> the word as a fuzzy keyword if it is a word followed by ~ and an optional
+     * number of edits, which is at most LevenshteinAutomaton.MAX_DISTANCE; its text keeps
+     * the ~ and the number. null otherwise </pre>
+     */
+    private static Word fuzzy(String s, int start, int end) {
+        int tilde = s.lastIndexOf('~', end - 1);
+        if (tilde <= start) {
+            return null;
+        }
+        // the word before ~ must end with its text, like a keyword
+        int textStart = Tokenizer.textStart(s, start, tilde);
+        if (Tokenizer.textEnd(s, start, tilde) != tilde || !Character.isLetter(s.charAt(textStart))) {
+            return null;
+        }
+        int textEnd = tilde + 1;
+        String distance = "";
+        if (textEnd < end && Character.isDigit(s.charAt(textEnd))) {
+            distance = String.valueOf(Math.min(s.charAt(textEnd) - '0', LevenshteinAutomaton.MAX_DISTANCE));
+            textEnd++;
+        }
+        for (int i = textEnd; i < end; i++) {
+            if (Character.isLetterOrDigit(s.charAt(i))) {
+                return null;
             }
         }
-        return frequency;
+        return new Word(s.substring(start, textStart), s.substring(textStart, tilde) + "~" + distance,
+                s.substring(textEnd, end));
     }
 
     /**
      *
-     * @param wordList
-     * @param word
-     * @return the position of a word in a word list
+     * @param searchPhrase
+     * @param from
+     * @param to
+     * @effects add the keywords of the quoted part [from, to) of the search phrase, and the phrase itself
      */
-    private int findWordPosition(List<Word> wordList, Word word) {
-        for (int i = 0; i < wordList.size(); i++) {
-            Word currentWord = wordList.get(i);
-            if (currentWord.equals(word)) {
-                return i;
+    private void extractPhrase(String searchPhrase, int from, int to) {
+        Tokenizer tokens = new Tokenizer(searchPhrase, from, to);
+        List<String> phrase = new ArrayList<>();
+        while (tokens.next()) {
+            if (!tokens.isEmpty()) {
+                Word word = tokens.toWord();
+                if (word.isKeyword()) {
+                    keywords.add(word);
+                }
+                // stop words are part of the phrase too
+                phrase.add(TermDictionary.fold(word.getText()));
             }
         }
-        return -1;
+        if (!phrase.isEmpty()) {
+            proximities.add(Proximity.phrase(phrase.toArray(new String[0])));
+        }
+    }
+
+    /**
+     *
+     * @param s
+     * @param start
+     * @param end
+     * @return k if s[start, end) is NEAR/k with k > 0, otherwise 0
+     */
+    private static int nearDistance(String s, int start, int end) {
+        if (end - start < 6 || end - start > 14 || !s.startsWith("NEAR/", start)) {
+            return 0;
+        }
+        int distance = 0;
+        for (int i = start + 5; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            distance = distance * 10 + (c - '0');
+        }
+        return distance;
+    }
+
+    /**
+     * Expansions keeps the expansions of the keywords together with the trie and the stop words they come from
+     */
+    private static class Expansions {
+        private final TermTrie trie;
+        private final StopWords stopWords;
+        private final int[][] termIds;
+
+        Expansions(TermTrie trie, StopWords stopWords, int[][] termIds) {
+            this.trie = trie;
+            this.stopWords = stopWords;
+            this.termIds = termIds;
+        }
     }
 
     /**
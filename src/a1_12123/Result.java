@@ -13,6 +13,13 @@ public class Result implements Comparable<Result> {
      */
     private Doc d;
     private List<Match> matches;
+    private int docId;
+    // derived properties, computed once from the matches
+    private int matchCount;
+    private int totalFrequency;
+    private double averageFirstIndex;
+    // the score given by the Scorer of the engine, 0 without one
+    private double score;
 
     /**
      * A constructor to initialize a Result object with the related document and the list of matches
@@ -20,8 +27,46 @@ public class Result implements Comparable<Result> {
      * @param matches
      */
     public Result(Doc d, List<Match> matches) {
+        this(d, matches, -1);
+    }
+
+    /**
+     * A constructor used by the Engine, which also knows the position of the document
+     * @param d
+     * @param matches
+     * @param docId the position of the document in the engine
+     * @effects compute the derived properties once, the list of matches must not change afterwards
+     */
+    Result(Doc d, List<Match> matches, int docId) {
+        this(d, matches, docId, 0.0);
+    }
+
+    /**
+     * A constructor used by the Engine when it scores the results
+     * @param d
+     * @param matches
+     * @param docId the position of the document in the engine
+     * @param score the score of the document for the query
+     */
+    Result(Doc d, List<Match> matches, int docId, double score) {
+        this.score = score;
         this.d = d;
         this.matches = matches;
+        this.docId = docId;
+        // one pass over the matches for the total frequency and the average first index
+        int frequency = 0;
+        int firstIndexes = 0;
+        for (Match match : matches) {
+            frequency += match.getFreq();
+            firstIndexes += match.getFirstIndex();
+        }
+        this.matchCount = matches.size();
+        this.totalFrequency = frequency;
+        if (matches.isEmpty()) {
+            this.averageFirstIndex = 0.0;
+        } else {
+            this.averageFirstIndex = (double) firstIndexes / matches.size();
+        }
     }
 
     /**
@@ -32,6 +77,14 @@ public class Result implements Comparable<Result> {
         return this.d;
     }
 
+    /**
+     *
+     * @return the position of the document in the engine, -1 if it is unknown
+     */
+    int getDocId() {
+        return this.docId;
+    }
+
     /**
      *
      * @return a list of Matches objects
@@ -40,16 +93,20 @@ public class Result implements Comparable<Result> {
         return this.matches;
     }
 
+    /**
+     *
+     * @return the number of matches
+     */
+    public int getMatchCount() {
+        return this.matchCount;
+    }
+
     /**
      *
      * @return the sum of all frequencies of the matches
      */
     public int getTotalFrequency() {
-        int totalFrequency = 0;
-        for (Match match : matches) {
-            totalFrequency += match.getFreq();
-        }
-        return totalFrequency;
+        return this.totalFrequency;
     }
 
     /**
@@ -57,14 +114,7 @@ public class Result implements Comparable<Result> {
      * @return the average of the first indexes of the matches
      */
     public double getAverageFirstIndex() {
-        if (matches.isEmpty()) {
-            return 0.0;
-        }
-        int total = 0;
-        for (Match match : matches) {
-            total += match.getFirstIndex();
-        }
-        return (double) total / matches.size();
+        return this.averageFirstIndex;
     }
 
     /**
@@ -85,11 +135,11 @@ public class Result implements Comparable<Result> {
             Word matchedWord = match.getWord();
             // get the text part of the word
             String text = matchedWord.getText();
-            // highlight it
-            if (title.contains(matchedWord)) {
+            // highlight it, the positions found while matching tell where the word occurs
+            if (match.getTitlePositions() != null ? match.getTitlePositions().length > 0 : title.contains(matchedWord)) {
                 text = "<u>" + text + "</u>";
             }
-            if (body.contains(matchedWord)) {
+            if (match.getBodyPositions() != null ? match.getBodyPositions().length > 0 : body.contains(matchedWord)) {
                 text = "<b>" + text + "</b>";
             }
             // add parts of the word to the result
@@ -98,6 +148,14 @@ public class Result implements Comparable<Result> {
         return result.toString();
     }
 
+    /**
+     *
+     * @return the score of the document for the query, 0 if the engine has no Scorer
+     */
+    public double getScore() {
+        return this.score;
+    }
+
     /**
      *
      * @param o the object to be compared.
@@ -106,15 +164,22 @@ public class Result implements Comparable<Result> {
      */
     @Override
     public int compareTo(Result o) {
-        int matchesSizeComp = Integer.compare(this.matches.size(), o.matches.size());
-        int totalFreqComp = Integer.compare(this.getTotalFrequency(), o.getTotalFrequency());
-        double avgFirstIndexComp = Double.compare(this.getAverageFirstIndex(), o.getAverageFirstIndex());
-        if (matchesSizeComp != 0) {
-            return matchesSizeComp;
-        } else if (totalFreqComp != 0) {
-            return totalFreqComp;
-        } else if (avgFirstIndexComp != 0.0) {
-            return (int) avgFirstIndexComp;
-        } else return 0;
+        return compare(this, o);
+    }
+
+    /**
+     *
+     * @param a
+     * @param b
+     * @return the same as a.compareTo(b), only reading the precomputed primitive fields
+     */
+    public static int compare(Result a, Result b) {
+        if (a.matchCount != b.matchCount) {
+            return Integer.compare(a.matchCount, b.matchCount);
+        }
+        if (a.totalFrequency != b.totalFrequency) {
+            return Integer.compare(a.totalFrequency, b.totalFrequency);
+        }
+        return Double.compare(a.averageFirstIndex, b.averageFirstIndex);
     }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ResultCache keeps the ranked results of recent queries, keyed by their normalized keywords.
+ * The least recently used entries are evicted when there are too many entries or too many bytes,
+ * and an entry expires after a time to live
+ */
+public class ResultCache {
+
+    /**
+     * rough memory cost of the cached objects, used to enforce the byte limit
+     */
+    private static final long ENTRY_BYTES = 96;
+    private static final long RESULT_BYTES = 64;
+    private static final long MATCH_BYTES = 40;
+
+    /**
+     * private attributes
+     */
+    private int maxEntries;
+    private long maxBytes;
+    private long ttlNanos;
+    private LinkedHashMap<List<String>, Entry> entries;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * A constructor of class ResultCache
+     * @param maxEntries the maximum number of cached queries
+     * @param maxBytes the maximum estimated size of the cached results in bytes
+     * @param ttlMillis how long a cached result stays valid, 0 or less to never expire
+     */
+    public ResultCache(int maxEntries, long maxBytes, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        // access order, so the first entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     *
+     * @param q
+     * @return the cache key of a query: its keywords lower-cased, without duplicates, in order
+     * @requires stop words are already removed by the Query
+     */
+    public static List<String> key(Query q) {
+        List<String> key = new ArrayList<>();
+        for (Word keyword : q.getKeywords()) {
+            String term = TermDictionary.fold(keyword.getText());
+            if (!key.contains(term)) {
+                key.add(term);
+            }
+        }
+        return key;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the cached results for the key, null if they are missing or expired
+     */
+    public List<Result> get(List<String> key) {
+        return get(key, 0);
+    }
+
+    /**
+     *
+     * @param key
+     * @param generation the version of the documents the results must come from
+     * @return the cached results for the key, null if they are missing, expired or of another generation
+     */
+    public synchronized List<Result> get(List<String> key, long generation) {
+        Entry entry = entries.get(key);
+        if (entry != null && (entry.generation != generation
+                || ttlNanos > 0 && System.nanoTime() - entry.created > ttlNanos)) {
+            // expired, or computed on other documents
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.results;
+    }
+
+    /**
+     *
+     * @param key
+     * @param results
+     * @effects cache the results under the key, then evict the least recently used entries
+     * until the limits are respected again
+     */
+    public void put(List<String> key, List<Result> results) {
+        put(key, results, 0);
+    }
+
+    /**
+     *
+     * @param key
+     * @param results
+     * @param generation the version of the documents the results come from
+     * @effects the same as put(key, results), the results are only returned for that generation
+     */
+    public synchronized void put(List<String> key, List<Result> results, long generation) {
+        remove(key);
+        Entry entry = new Entry(results, estimateBytes(key, results), System.nanoTime(), generation);
+        entries.put(key, entry);
+        bytes += entry.bytes;
+        Iterator<Map.Entry<List<String>, Entry>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     *
+     * @effects remove every entry, the counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     *
+     * @return the number of cached queries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     *
+     * @return the estimated size of the cached results in bytes
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     *
+     * @return the number of lookups that found valid results
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     *
+     * @return the number of lookups that found nothing or expired results
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     *
+     * @return the number of entries evicted to respect the limits
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     *
+     * @param key
+     * @effects remove the entry of the key if there is one
+     */
+    private void remove(List<String> key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @param results
+     * @return a rough estimate of the memory used by a cache entry
+     */
+    private static long estimateBytes(List<String> key, List<Result> results) {
+        long size = ENTRY_BYTES;
+        for (String term : key) {
+            size += 40 + 2L * term.length();
+        }
+        for (Result result : results) {
+            size += RESULT_BYTES + MATCH_BYTES * result.getMatchCount();
+        }
+        return size;
+    }
+
+    /**
+     * The cached results of a query, when they were cached and from which documents
+     */
+    private static class Entry {
+        private List<Result> results;
+        private long bytes;
+        private long created;
+        private long generation;
+
+        Entry(List<Result> results, long bytes, long created, long generation) {
+            this.results = results;
+            this.bytes = bytes;
+            this.created = created;
+            this.generation = generation;
+        }
+    }
+}
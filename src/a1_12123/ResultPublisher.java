@@ -0,0 +1,141 @@
+package engine;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * ResultPublisher hands the results of a search to reactive subscribers, see Engine.searchPublisher().
+ * Every subscriber pulls its own lazy iterator of results: the results are only taken from it
+ * while the subscriber has requested more, so a slow or stopped subscriber stops the scan
+ */
+final class ResultPublisher implements Flow.Publisher<Result> {
+
+    /**
+     * private attributes
+     */
+    private Supplier<Iterator<Result>> scans;
+    private Executor executor;
+
+    /**
+     * A constructor of class ResultPublisher
+     * @param scans makes a new lazy iterator of the results for every subscriber
+     * @param executor runs the scans
+     */
+    ResultPublisher(Supplier<Iterator<Result>> scans, Executor executor) {
+        this.scans = scans;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Result> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new ScanSubscription(subscriber));
+    }
+
+    /**
+     * ScanSubscription sends results while there is demand. Its signals are sent by one task on
+     * the executor at a time: a request() or a cancel() while the task runs makes it run once more
+     */
+    private class ScanSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Result> subscriber;
+        // the results requested and not sent yet, Long.MAX_VALUE for no limit
+        private final AtomicLong demand = new AtomicLong();
+        // the number of times the task was asked to run since it last checked
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        // only used by the task
+        private Iterator<Result> results;
+        private boolean done;
+
+        ScanSubscription(Flow.Subscriber<? super Result> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                // add the demand, capped at Long.MAX_VALUE
+                demand.getAndAccumulate(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         *
+         * @effects run the task on the executor, unless it is already running or about to
+         */
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                send();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         *
+         * @effects <pre> send the requested results, then onComplete() once there are no more,
+         * without waiting for another request;
+         * a non-positive request or an exception of the scan ends the subscription with onError() </pre>
+         */
+        private void send() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                // let the scan and its postings be collected
+                done = true;
+                results = null;
+                return;
+            }
+            if (invalidRequest != null) {
+                done = true;
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            try {
+                if (results == null) {
+                    results = scans.get();
+                }
+                long requested = demand.get();
+                long sent = 0;
+                while (sent < requested && !cancelled && results.hasNext()) {
+                    subscriber.onNext(results.next());
+                    sent++;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-sent);
+                }
+                // complete as soon as the results run out, even if the last one used up the demand
+                if (!cancelled && !results.hasNext()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                done = true;
+                subscriber.onError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package engine;
+
+/**
+ * A Scorer gives a search result a score, the sum of the scores of its matched keywords.
+ * Engine.setScorer() makes the search rank the results by decreasing score
+ */
+public interface Scorer {
+
+    /**
+     *
+     * @param stats the statistics of the searched documents
+     * @param termId the term id of the keyword
+     * @param frequency the number of times the keyword appears in the document
+     * @param length the number of words of the document
+     * @return what the keyword adds to the score of the document
+     */
+    double score(CollectionStats stats, int termId, int frequency, int length);
+}
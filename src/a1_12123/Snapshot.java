@@ -0,0 +1,289 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Snapshot is an immutable state of the documents of an Engine: the documents,
+ * their index, the removed ones and the statistics used for scoring. Searches read the latest snapshot without any lock;
+ * loading and refreshing build a new snapshot and publish it at once
+ */
+final class Snapshot {
+
+    /**
+     * private attributes, none of them is changed after construction
+     */
+    private final long version;
+    private final Doc[] docs;
+    private final Index index;
+    private final BitSet deleted;
+    private final CollectionStats stats;
+
+    /**
+     * A constructor of class Snapshot
+     * @param version increases with every published snapshot
+     * @param docs the documents by docId
+     * @param index the index of the documents, it must not be changed afterwards
+     * @param deleted the removed documents, it must not be changed afterwards
+     * @param stats the statistics of the documents that are not removed
+     */
+    Snapshot(long version, Doc[] docs, Index index, BitSet deleted, CollectionStats stats) {
+        this.version = version;
+        this.docs = docs;
+        this.index = index;
+        this.deleted = deleted;
+        this.stats = stats;
+    }
+
+    /**
+     *
+     * @return a snapshot without any document, with a new dictionary
+     */
+    static Snapshot empty() {
+        return new Snapshot(0, new Doc[0], new Index(new TermDictionary()), new BitSet(), CollectionStats.EMPTY);
+    }
+
+    /**
+     *
+     * @return the version of the snapshot, a newer snapshot has a larger version
+     */
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     *
+     * @return the number of documents, including the removed ones
+     */
+    int size() {
+        return docs.length;
+    }
+
+    /**
+     *
+     * @param docId
+     * @return the document at that position
+     */
+    Doc getDoc(int docId) {
+        return docs[docId];
+    }
+
+    /**
+     *
+     * @param docId
+     * @return whether the document was removed
+     */
+    boolean isDeleted(int docId) {
+        return deleted.get(docId);
+    }
+
+    /**
+     *
+     * @return the index of the documents
+     */
+    Index getIndex() {
+        return this.index;
+    }
+
+    /**
+     *
+     * @return the dictionary of the term ids of the documents and of the index
+     */
+    TermDictionary getDictionary() {
+        return index.getDictionary();
+    }
+
+    /**
+     *
+     * @return the statistics of the documents that are not removed
+     */
+    CollectionStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     *
+     * @return the removed documents
+     */
+    BitSet getDeleted() {
+        return this.deleted;
+    }
+
+    /**
+     *
+     * @return the documents by docId, including the removed ones
+     */
+    Doc[] getDocs() {
+        return this.docs;
+    }
+
+    /**
+     *
+     * @return <pre> a snapshot of the documents that are not removed, numbered again in the same
+     * order, with a new dictionary holding only their terms and an index rebuilt from their term ids;
+     * nothing is tokenized again. The documents, postings and terms of the removed documents are
+     * left to the older snapshots, and freed with them </pre>
+     */
+    Snapshot compact() {
+        TermDictionary dictionary = new TermDictionary();
+        Builder builder = new Builder(new Snapshot(version, new Doc[0], new Index(dictionary), new BitSet(),
+                CollectionStats.EMPTY));
+        // the new term id of every old term id, -1 until it is seen
+        int[] newIds = new int[getDictionary().size()];
+        Arrays.fill(newIds, -1);
+        for (int docId = 0; docId < docs.length; docId++) {
+            if (deleted.get(docId)) {
+                continue;
+            }
+            Doc doc = docs[docId];
+            Doc moved = new Doc(doc.getContent(), dictionary, doc.getBodyStart(),
+                    remap(doc.getTitleTerms(), dictionary, newIds), doc.getTitleOffsets(),
+                    remap(doc.getBodyTerms(), dictionary, newIds), doc.getBodyOffsets());
+            builder.getIndex().addPostings(builder.nextDocId(), Index.analyze(moved));
+            builder.addDoc(moved);
+        }
+        return builder.build();
+    }
+
+    /**
+     *
+     * @param terms term ids of this snapshot
+     * @param dictionary the new dictionary
+     * @param newIds the new term id of every old term id, -1 if it is not known yet
+     * @return the term ids in the new dictionary
+     */
+    private int[] remap(int[] terms, TermDictionary dictionary, int[] newIds) {
+        int[] moved = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            int termId = terms[i];
+            if (newIds[termId] < 0) {
+                newIds[termId] = dictionary.getId(getDictionary().getTerm(termId));
+            }
+            moved[i] = newIds[termId];
+        }
+        return moved;
+    }
+
+    /**
+     * Builder collects the changes of one writer on top of a snapshot
+     */
+    static class Builder {
+        private long version;
+        private Doc[] docs;
+        private int size;
+        private Index index;
+        private BitSet deleted;
+        // the statistics, kept up to date with every added or removed document
+        private int documentCount;
+        private long totalLength;
+        private int[] documentFrequency;
+        // the last count() that saw each term id, so a term is counted once per document
+        private int[] countedBy;
+        private int counts;
+
+        /**
+         * A constructor of class Builder
+         * @param base the latest snapshot
+         * @effects start from copies of the base, the base itself is never changed
+         */
+        Builder(Snapshot base) {
+            this.version = base.version + 1;
+            this.docs = base.docs.clone();
+            this.size = base.docs.length;
+            this.index = base.index.copy();
+            this.deleted = (BitSet) base.deleted.clone();
+            this.documentCount = base.stats.getDocumentCount();
+            this.totalLength = base.stats.getTotalLength();
+            this.documentFrequency = base.stats.getDocumentFrequencies().clone();
+            this.countedBy = new int[0];
+        }
+
+        /**
+         *
+         * @return the docId the next added document gets
+         */
+        int nextDocId() {
+            return this.size;
+        }
+
+        /**
+         *
+         * @param doc
+         * @effects append the document, its postings are added to getIndex() by the caller
+         */
+        void addDoc(Doc doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, Math.max(16, size * 2));
+            }
+            docs[size] = doc;
+            count(size, 1);
+            size++;
+        }
+
+        /**
+         *
+         * @param docId
+         * @effects mark the document as removed
+         */
+        void delete(int docId) {
+            if (!deleted.get(docId)) {
+                deleted.set(docId);
+                count(docId, -1);
+            }
+        }
+
+        /**
+         *
+         * @param docId
+         * @param delta 1 when the document is added, -1 when it is removed
+         * @effects update the statistics with the document
+         */
+        private void count(int docId, int delta) {
+            Doc doc = docs[docId];
+            int terms = index.getDictionary().size();
+            if (documentFrequency.length < terms) {
+                documentFrequency = Arrays.copyOf(documentFrequency, Math.max(terms, documentFrequency.length * 2));
+            }
+            if (countedBy.length < documentFrequency.length) {
+                countedBy = new int[documentFrequency.length];
+            }
+            counts++;
+            documentCount += delta;
+            totalLength += delta * doc.getLength();
+            countTerms(doc.getTitleTerms(), delta);
+            countTerms(doc.getBodyTerms(), delta);
+        }
+
+        /**
+         *
+         * @param terms
+         * @param delta
+         * @effects add delta to the document frequency of every term not counted yet for the document
+         */
+        private void countTerms(int[] terms, int delta) {
+            for (int termId : terms) {
+                if (countedBy[termId] != counts) {
+                    countedBy[termId] = counts;
+                    documentFrequency[termId] += delta;
+                }
+            }
+        }
+
+        /**
+         *
+         * @return the index being built
+         */
+        Index getIndex() {
+            return this.index;
+        }
+
+        /**
+         *
+         * @return the new snapshot
+         */
+        Snapshot build() {
+            return new Snapshot(version, Arrays.copyOf(docs, size), index, deleted,
+                    new CollectionStats(documentCount, totalLength, documentFrequency));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Snippet builds a keyword-in-context excerpt of the body of a result: a fixed number of words
+ * around the densest cluster of matched keywords, with the keywords in bold. It only reads the
+ * positions kept in the matches and the words of the excerpt, the rest of the body is not scanned
+ */
+public class Snippet {
+
+    /**
+     *
+     * @param result
+     * @param width the number of words of the excerpt
+     * @return the HTML excerpt, see render()
+     * @requires width > 0
+     */
+    public static String of(Result result, int width) {
+        StringBuilder out = new StringBuilder();
+        try {
+            render(result, width, out);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     *
+     * @param result
+     * @param width the number of words of the excerpt
+     * @param out
+     * @effects <pre> write width words of the body to out, escaped, starting so that the window
+     * holding the most keywords is centered; the keywords are between <b> and </b>, and "... "
+     * or " ..." mark the words left out before and after the excerpt </pre>
+     * @throws IOException if out cannot be written
+     * @requires width > 0
+     */
+    public static void render(Result result, int width, Appendable out) throws IOException {
+        Doc doc = result.getDoc();
+        String content = doc.getContent();
+        int[] offsets = doc.getBodyOffsets();
+        int size = offsets.length / 3;
+        int[] hits = hits(result);
+        int start = windowStart(hits, width, size);
+        int end = Math.min(size, start + width);
+        if (start > 0) {
+            out.append("... ");
+        }
+        // copy the words of the window, the hits are visited in order
+        int hit = Arrays.binarySearch(hits, start);
+        if (hit < 0) {
+            hit = -hit - 1;
+        }
+        int position = start == 0 ? doc.getBodyStart() : offsets[start * 3 - 1] + 1;
+        for (; hit < hits.length && hits[hit] < end; hit++) {
+            int textStart = offsets[hits[hit] * 3];
+            int textEnd = offsets[hits[hit] * 3 + 1];
+            HtmlRenderer.escape(content, position, textStart, out);
+            out.append("<b>");
+            HtmlRenderer.escape(content, textStart, textEnd, out);
+            out.append("</b>");
+            position = textEnd;
+        }
+        if (end > start) {
+            HtmlRenderer.escape(content, position, offsets[end * 3 - 1], out);
+        }
+        if (end < size) {
+            out.append(" ...");
+        }
+    }
+
+    /**
+     *
+     * @param result
+     * @return the positions in the body of every matched keyword, sorted and without repeats
+     */
+    static int[] hits(Result result) {
+        List<Match> matches = result.getMatches();
+        int[][] positions = new int[matches.size()][];
+        int total = 0;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = matches.get(i).getBodyPositions();
+            if (positions[i] == null) {
+                // a match built without positions, find them in the body
+                positions[i] = bodyPositions(result.getDoc(), matches.get(i).getWord());
+            }
+            total += positions[i].length;
+        }
+        int[] hits = new int[total];
+        int size = 0;
+        for (int[] keywordPositions : positions) {
+            System.arraycopy(keywordPositions, 0, hits, size, keywordPositions.length);
+            size += keywordPositions.length;
+        }
+        Arrays.sort(hits);
+        // a keyword repeated in the query gives the same positions twice
+        int distinct = 0;
+        for (int i = 0; i < hits.length; i++) {
+            if (distinct == 0 || hits[i] != hits[distinct - 1]) {
+                hits[distinct++] = hits[i];
+            }
+        }
+        return Arrays.copyOf(hits, distinct);
+    }
+
+    /**
+     *
+     * @param hits sorted positions of the keywords
+     * @param width the number of words of the window
+     * @param size the number of words of the body
+     * @return the first word of the window holding the most hits, centered on them
+     */
+    static int windowStart(int[] hits, int width, int size) {
+        if (hits.length == 0 || size <= width) {
+            return 0;
+        }
+        // slide over the hits: [first, last) are the hits of the window starting at hits[first]
+        int bestFirst = 0;
+        int bestLast = 0;
+        int last = 0;
+        for (int first = 0; first < hits.length; first++) {
+            while (last < hits.length && hits[last] - hits[first] < width) {
+                last++;
+            }
+            if (last - first > bestLast - bestFirst) {
+                bestFirst = first;
+                bestLast = last;
+            }
+        }
+        int span = hits[bestLast - 1] - hits[bestFirst] + 1;
+        int start = hits[bestFirst] - (width - span) / 2;
+        return Math.max(0, Math.min(size - width, start));
+    }
+
+    /**
+     *
+     * @param doc
+     * @param word
+     * @return every position of the word in the body of the document
+     */
+    private static int[] bodyPositions(Doc doc, Word word) {
+        int termId = doc.getDictionary().lookup(TermDictionary.fold(word.getText()));
+        int[] terms = doc.getBodyTerms();
+        int[] positions = new int[terms.length];
+        int size = 0;
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i] == termId) {
+                positions[size++] = i;
+            }
+        }
+        return Arrays.copyOf(positions, size);
+    }
+}
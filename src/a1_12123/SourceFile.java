@@ -0,0 +1,71 @@
+package engine;
+
+import java.io.File;
+
+/**
+ * SourceFile records which file a document was loaded from, with the size and the
+ * modification time the file had at that moment, so a later change can be detected
+ */
+class SourceFile {
+
+    /**
+     * private attributes
+     */
+    private String path;
+    private long size;
+    private long lastModified;
+
+    /**
+     * A constructor of class SourceFile
+     * @param path the absolute path of the file
+     * @param size
+     * @param lastModified
+     */
+    SourceFile(String path, long size, long lastModified) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     *
+     * @param file
+     * @return the current path, size and modification time of the file
+     */
+    static SourceFile of(File file) {
+        return new SourceFile(file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    /**
+     *
+     * @return the absolute path of the file
+     */
+    String getPath() {
+        return this.path;
+    }
+
+    /**
+     *
+     * @return the size of the file when the document was loaded
+     */
+    long getSize() {
+        return this.size;
+    }
+
+    /**
+     *
+     * @return the modification time of the file when the document was loaded
+     */
+    long getLastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     *
+     * @param other
+     * @return whether the other record has the same size and modification time
+     */
+    boolean sameVersion(SourceFile other) {
+        return this.size == other.size && this.lastModified == other.lastModified;
+    }
+}
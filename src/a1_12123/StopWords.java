@@ -0,0 +1,128 @@
+package engine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * StopWords is an immutable set of stop words that is checked ignoring case without creating any String.
+ * The words are case-folded once and stored in an open-addressing hash table;
+ * a lookup folds the characters of the checked text on the fly
+ */
+public final class StopWords {
+
+    /**
+     * a set without any stop word
+     */
+    public static final StopWords EMPTY = new StopWords(Collections.emptySet());
+
+    /**
+     * private attributes
+     */
+    private final String[] table;
+    private final int mask;
+    private final Set<String> words;
+
+    /**
+     * A constructor of class StopWords
+     * @param words the stop words, they are copied
+     */
+    public StopWords(Collection<String> words) {
+        this.words = Collections.unmodifiableSet(new HashSet<>(words));
+        // a power of two at least twice the number of words, so probes stay short
+        int capacity = 2;
+        while (capacity < this.words.size() * 2) {
+            capacity *= 2;
+        }
+        this.table = new String[capacity];
+        this.mask = capacity - 1;
+        for (String word : this.words) {
+            String folded = TermDictionary.fold(word);
+            int slot = hash(folded, 0, folded.length()) & mask;
+            while (table[slot] != null && !table[slot].equals(folded)) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = folded;
+        }
+    }
+
+    /**
+     *
+     * @param text
+     * @return whether the text is a stop word, ignoring case
+     */
+    public boolean contains(CharSequence text) {
+        return contains(text, 0, text.length());
+    }
+
+    /**
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return whether the characters [start, end) of the text are a stop word, ignoring case
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        int slot = hash(text, start, end) & mask;
+        while (table[slot] != null) {
+            if (foldedEquals(table[slot], text, start, end)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @return the number of stop words
+     */
+    public int size() {
+        return this.words.size();
+    }
+
+    /**
+     *
+     * @return the stop words as a read-only set
+     */
+    public Set<String> asSet() {
+        return this.words;
+    }
+
+    /**
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return the hash of the case-folded characters [start, end) of the text
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + TermDictionary.fold(text.charAt(i));
+        }
+        // spread the high bits, the table only uses the low ones
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     *
+     * @param folded a case-folded stop word
+     * @param text
+     * @param start
+     * @param end
+     * @return whether the characters [start, end) of the text fold to the stop word
+     */
+    private static boolean foldedEquals(String folded, CharSequence text, int start, int end) {
+        if (folded.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (folded.charAt(i - start) != TermDictionary.fold(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
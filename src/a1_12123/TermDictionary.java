@@ -0,0 +1,192 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TermDictionary gives every distinct case-folded word an int term id, so a document only needs
+ * to store the ids of its words. Every Engine has its own dictionary, kept with its Index and shared
+ * by all its documents; a document created on its own has a small dictionary of its own.
+ * A dictionary only grows; when an engine compacts away its removed documents, it moves the
+ * remaining ones to a new dictionary, and the old one is freed with the older snapshots
+ */
+public class TermDictionary {
+
+    /**
+     * the id of each term and the term of each id
+     */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    // the number of terms, read without locking the list
+    private volatile int size;
+
+    /**
+     * the sorted trie of the terms, rebuilt when terms are added after it
+     */
+    private volatile TermTrie trie = TermTrie.EMPTY;
+
+    /**
+     *
+     * @param term a case-folded word
+     * @return the id of the term, a new id is given to a term seen for the first time
+     * @requires it can be called from many loading threads at the same time
+     */
+    public int getId(String term) {
+        Integer id = ids.get(term);
+        if (id != null) {
+            return id;
+        }
+        synchronized (terms) {
+            id = ids.get(term);
+            if (id == null) {
+                id = terms.size();
+                terms.add(term);
+                ids.put(term, id);
+                size = terms.size();
+            }
+            return id;
+        }
+    }
+
+    /**
+     *
+     * @param term a case-folded word
+     * @return the id of the term, -1 if no document of the dictionary has ever contained it
+     */
+    public int lookup(String term) {
+        Integer id = ids.get(term);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     *
+     * @param cached the last lookup of the same words, null if there is none
+     * @param words case-folded words, null for a word without a term id
+     * @return <pre> the term ids of the words in this dictionary; the cached lookup is returned
+     * again if it was done in this dictionary and it knew every word or no term was added since </pre>
+     */
+    Lookup lookup(Lookup cached, List<String> words) {
+        int size = this.size;
+        if (cached != null && cached.dictionary == this && (cached.complete || cached.size == size)) {
+            return cached;
+        }
+        int[] found = new int[words.size()];
+        boolean complete = true;
+        for (int i = 0; i < found.length; i++) {
+            found[i] = words.get(i) == null ? -1 : lookup(words.get(i));
+            complete &= found[i] >= 0;
+        }
+        return new Lookup(this, size, found, complete);
+    }
+
+    /**
+     *
+     * @param id
+     * @return the case-folded word of a term id
+     */
+    public String getTerm(int id) {
+        synchronized (terms) {
+            return terms.get(id);
+        }
+    }
+
+    /**
+     *
+     * @return the number of terms in the dictionary
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     *
+     * @return a sorted trie of every term of the dictionary, to expand prefixes and wildcards
+     * @requires <pre> it is built the first time it is needed after a load brought new terms,
+     * and then shared by every query until the next new term </pre>
+     */
+    TermTrie trie() {
+        TermTrie current = trie;
+        if (current.size() == size()) {
+            return current;
+        }
+        synchronized (this) {
+            current = trie;
+            String[] words;
+            synchronized (terms) {
+                if (current.size() == terms.size()) {
+                    return current;
+                }
+                words = terms.toArray(new String[0]);
+            }
+            current = new TermTrie(words);
+            trie = current;
+            return current;
+        }
+    }
+
+    /**
+     * Lookup is the term ids of some words in one dictionary, kept by a Query so the words are
+     * only looked up again in another dictionary, or when a load brought new terms while some
+     * word was unknown
+     */
+    static final class Lookup {
+        private final TermDictionary dictionary;
+        private final int size;
+        private final int[] ids;
+        private final boolean complete;
+
+        private Lookup(TermDictionary dictionary, int size, int[] ids, boolean complete) {
+            this.dictionary = dictionary;
+            this.size = size;
+            this.ids = ids;
+            this.complete = complete;
+        }
+
+        /**
+         *
+         * @return the term id of every word, -1 for an unknown word
+         */
+        int[] getIds() {
+            return this.ids;
+        }
+    }
+
+    /**
+     *
+     * @param text
+     * @return the case-folded form of the text, two texts have the same form
+     * exactly when they are equal ignoring case (like Word.equals())
+     */
+    public static String fold(CharSequence text) {
+        return fold(text, 0, text.length());
+    }
+
+    /**
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return the case-folded form of the characters [start, end) of the text
+     */
+    public static String fold(CharSequence text, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(text.charAt(start + i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     *
+     * @param c
+     * @return the case-folded form of a character, the same rule as String.equalsIgnoreCase()
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
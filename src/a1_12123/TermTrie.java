@@ -0,0 +1,313 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * TermTrie is a sorted dictionary of terms kept as a compact trie in a few arrays.
+ * Every node holds the range of the sorted terms below it, so a prefix is expanded by copying
+ * that range, and a wildcard pattern or a LevenshteinAutomaton only visits the nodes that can
+ * still match: the cost follows the number of matching terms, not the size of the vocabulary.
+ * It is immutable, see TermDictionary.trie()
+ */
+final class TermTrie {
+
+    /**
+     * the longest wildcard pattern, its positions are kept as the bits of a long
+     */
+    static final int MAX_PATTERN = 63;
+
+    /**
+     * a trie without any term
+     */
+    static final TermTrie EMPTY = new TermTrie(new String[0]);
+
+    /**
+     * private attributes
+     */
+    // the number of terms, and their term ids in the order of their words
+    private int size;
+    private int[] sortedIds;
+    // for every node: the character leading to it, its children [childStart, childEnd),
+    // the sorted terms below it [rangeStart, rangeEnd), the term ending at it or -1
+    private char[] labels;
+    private int[] childStart;
+    private int[] childEnd;
+    private int[] rangeStart;
+    private int[] rangeEnd;
+    private int[] terminal;
+
+    /**
+     * A constructor of class TermTrie
+     * @param terms the case-folded word of every term id
+     * @effects <pre> sort the terms and build the nodes breadth first, so the children of a node
+     * are next to each other and sorted by their character </pre>
+     */
+    TermTrie(String[] terms) {
+        this.size = terms.length;
+        Integer[] order = new Integer[terms.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> terms[a].compareTo(terms[b]));
+        this.sortedIds = new int[order.length];
+        String[] sorted = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedIds[i] = order[i];
+            sorted[i] = terms[order[i]];
+        }
+        int capacity = 16;
+        labels = new char[capacity];
+        childStart = new int[capacity];
+        childEnd = new int[capacity];
+        rangeStart = new int[capacity];
+        rangeEnd = new int[capacity];
+        terminal = new int[capacity];
+        int[] depth = new int[capacity];
+        // the root holds every term
+        rangeEnd[0] = sorted.length;
+        int count = 1;
+        for (int node = 0; node < count; node++) {
+            int from = rangeStart[node];
+            int to = rangeEnd[node];
+            int d = depth[node];
+            terminal[node] = -1;
+            // the term ending here sorts before the longer ones
+            if (from < to && sorted[from].length() == d) {
+                terminal[node] = sortedIds[from];
+                from++;
+            }
+            childStart[node] = count;
+            while (from < to) {
+                char c = sorted[from].charAt(d);
+                int next = from + 1;
+                while (next < to && sorted[next].charAt(d) == c) {
+                    next++;
+                }
+                if (count == labels.length) {
+                    capacity = count * 2;
+                    labels = Arrays.copyOf(labels, capacity);
+                    childStart = Arrays.copyOf(childStart, capacity);
+                    childEnd = Arrays.copyOf(childEnd, capacity);
+                    rangeStart = Arrays.copyOf(rangeStart, capacity);
+                    rangeEnd = Arrays.copyOf(rangeEnd, capacity);
+                    terminal = Arrays.copyOf(terminal, capacity);
+                    depth = Arrays.copyOf(depth, capacity);
+                }
+                labels[count] = c;
+                rangeStart[count] = from;
+                rangeEnd[count] = next;
+                depth[count] = d + 1;
+                count++;
+                from = next;
+            }
+            childEnd[node] = count;
+        }
+        labels = Arrays.copyOf(labels, count);
+        childStart = Arrays.copyOf(childStart, count);
+        childEnd = Arrays.copyOf(childEnd, count);
+        rangeStart = Arrays.copyOf(rangeStart, count);
+        rangeEnd = Arrays.copyOf(rangeEnd, count);
+        terminal = Arrays.copyOf(terminal, count);
+    }
+
+    /**
+     *
+     * @return the number of terms in the trie
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     *
+     * @param prefix a case-folded prefix
+     * @return the term ids of every term starting with the prefix, in the order of their words
+     */
+    int[] prefix(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length() && node >= 0; i++) {
+            node = child(node, prefix.charAt(i));
+        }
+        if (node < 0) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(sortedIds, rangeStart[node], rangeEnd[node]);
+    }
+
+    /**
+     *
+     * @param pattern a case-folded pattern, * stands for any characters and ? for exactly one
+     * @return the term ids of every term matching the whole pattern, in the order of their words
+     * @requires <pre> pattern.length() <= MAX_PATTERN. The pattern runs as a set of positions
+     * over the trie; a node reached with no position left is not walked further, and a node
+     * reached at a position followed only by * matches all the terms below it at once </pre>
+     */
+    int[] wildcard(String pattern) {
+        int stars = pattern.length();
+        while (stars > 0 && pattern.charAt(stars - 1) == '*') {
+            stars--;
+        }
+        if (pattern.indexOf('*') == stars && pattern.indexOf('?') < 0) {
+            // a plain prefix
+            return prefix(pattern.substring(0, stars));
+        }
+        // the positions from which the rest of the pattern is only *
+        long tail = 0;
+        for (int i = stars; i < pattern.length(); i++) {
+            tail |= 1L << i;
+        }
+        IntList found = new IntList();
+        walkWildcard(pattern, 0, closure(pattern, 1L), tail, found);
+        return found.toArray();
+    }
+
+    /**
+     *
+     * @param pattern
+     * @param node
+     * @param positions the positions of the pattern reached at the node, as bits
+     * @param tail the positions followed only by *
+     * @param found
+     * @effects add the term ids below the node matching the pattern to found
+     */
+    private void walkWildcard(String pattern, int node, long positions, long tail, IntList found) {
+        if ((positions & tail) != 0) {
+            found.addAll(sortedIds, rangeStart[node], rangeEnd[node]);
+            return;
+        }
+        if ((positions & 1L << pattern.length()) != 0 && terminal[node] >= 0) {
+            found.add(terminal[node]);
+        }
+        for (int child = childStart[node]; child < childEnd[node]; child++) {
+            long next = step(pattern, positions, labels[child]);
+            if (next != 0) {
+                walkWildcard(pattern, child, next, tail, found);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param pattern
+     * @param positions the positions of the pattern reached so far, as bits
+     * @param c the next character of the term
+     * @return the positions reached after c
+     */
+    private static long step(String pattern, long positions, char c) {
+        long next = 0;
+        for (long rest = positions; rest != 0; rest &= rest - 1) {
+            int i = Long.numberOfTrailingZeros(rest);
+            if (i == pattern.length()) {
+                continue;
+            }
+            char p = pattern.charAt(i);
+            if (p == '*') {
+                next |= 1L << i;
+            } else if (p == '?' || p == c) {
+                next |= 1L << (i + 1);
+            }
+        }
+        return closure(pattern, next);
+    }
+
+    /**
+     *
+     * @param pattern
+     * @param positions
+     * @return the positions, and the ones after every * they reach, since * can match nothing
+     */
+    private static long closure(String pattern, long positions) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ((positions & 1L << i) != 0 && pattern.charAt(i) == '*') {
+                positions |= 1L << (i + 1);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     *
+     * @param automaton
+     * @return the term ids of every term the automaton accepts, in the order of their words
+     * @requires <pre> the automaton reads the characters of the trie from the root; a node whose
+     * state cannot match any more is not walked further, so only the terms sharing a prefix
+     * within the distance of the keyword are visited </pre>
+     */
+    int[] fuzzy(LevenshteinAutomaton automaton) {
+        IntList found = new IntList();
+        walkFuzzy(automaton, 0, automaton.start(), null, '\0', found);
+        return found.toArray();
+    }
+
+    /**
+     *
+     * @param automaton
+     * @param node
+     * @param row the state of the automaton at the node
+     * @param previousRow the state at the parent of the node, null at the root
+     * @param label the character leading to the node
+     * @param found
+     * @effects add the term ids below the node the automaton accepts to found
+     */
+    private void walkFuzzy(LevenshteinAutomaton automaton, int node, int[] row, int[] previousRow, char label,
+                           IntList found) {
+        if (terminal[node] >= 0 && automaton.isMatch(row)) {
+            found.add(terminal[node]);
+        }
+        for (int child = childStart[node]; child < childEnd[node]; child++) {
+            int[] next = automaton.step(row, previousRow, label, labels[child]);
+            if (automaton.canMatch(next)) {
+                walkFuzzy(automaton, child, next, row, labels[child], found);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param node
+     * @param c
+     * @return the child of the node reached by c, -1 if there is none
+     */
+    private int child(int node, char c) {
+        int low = childStart[node];
+        int high = childEnd[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (labels[middle] < c) {
+                low = middle + 1;
+            } else if (labels[middle] > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * IntList is a growable list of ints, for the term ids found by a walk
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] source, int from, int to) {
+            if (size + to - from > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + to - from, size * 2));
+            }
+            System.arraycopy(source, from, values, size, to - from);
+            size += to - from;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
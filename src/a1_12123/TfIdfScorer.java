@@ -0,0 +1,21 @@
+package engine;
+
+/**
+ * TfIdfScorer scores a keyword by its frequency in the document, divided by the length
+ * of the document, times the inverse document frequency of the term
+ */
+public class TfIdfScorer implements Scorer {
+
+    /**
+     *
+     * @return (tf / length) * ln(N / df)
+     */
+    @Override
+    public double score(CollectionStats stats, int termId, int frequency, int length) {
+        int documentFrequency = stats.getDocumentFrequency(termId);
+        if (documentFrequency == 0 || length == 0) {
+            return 0;
+        }
+        return (double) frequency / length * Math.log((double) stats.getDocumentCount() / documentFrequency);
+    }
+}
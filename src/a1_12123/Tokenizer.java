@@ -0,0 +1,207 @@
+package engine;
+
+/**
+ * Tokenizer scans a line of text once and splits it on single spaces, like String.split(" ").
+ * Each token is reported as offsets into the original text: start, textStart, textEnd and end,
+ * so the prefix is [start, textStart), the text is [textStart, textEnd) and the suffix is [textEnd, end).
+ * No String is created unless a Word is asked for
+ */
+public class Tokenizer {
+
+    /**
+     * private attributes
+     */
+    private CharSequence content;
+    private int limit;
+    private int position;
+    private boolean emptyLine;
+
+    private int start;
+    private int textStart;
+    private int textEnd;
+    private int end;
+
+    /**
+     * A constructor of class Tokenizer
+     * @param content
+     * @effects prepare to scan the whole content
+     */
+    public Tokenizer(CharSequence content) {
+        this(content, 0, content.length());
+    }
+
+    /**
+     * A constructor of class Tokenizer
+     * @param content
+     * @param from the first character of the line (inclusive)
+     * @param to the end of the line (exclusive)
+     * @effects prepare to scan the line [from, to) of the content
+     * @requires <pre> like String.split(" "), the trailing empty tokens are dropped,
+     * but an empty line still has one empty token </pre>
+     */
+    public Tokenizer(CharSequence content, int from, int to) {
+        this.content = content;
+        this.position = from;
+        this.emptyLine = from == to;
+        // drop the trailing spaces, they would only produce trailing empty tokens
+        int last = to;
+        while (last > from && content.charAt(last - 1) == ' ') {
+            last--;
+        }
+        this.limit = last;
+    }
+
+    /**
+     *
+     * @return whether there is one more token, its offsets are then available through the getters
+     */
+    public boolean next() {
+        if (emptyLine) {
+            emptyLine = false;
+            setToken(position, position);
+            return true;
+        }
+        if (position >= limit) {
+            return false;
+        }
+        int tokenEnd = position;
+        while (tokenEnd < limit && content.charAt(tokenEnd) != ' ') {
+            tokenEnd++;
+        }
+        setToken(position, tokenEnd);
+        // skip the separator
+        position = tokenEnd + 1;
+        return true;
+    }
+
+    /**
+     *
+     * @param tokenStart
+     * @param tokenEnd
+     * @effects make [tokenStart, tokenEnd) the current token
+     */
+    private void setToken(int tokenStart, int tokenEnd) {
+        this.start = tokenStart;
+        this.end = tokenEnd;
+        this.textStart = textStart(content, tokenStart, tokenEnd);
+        this.textEnd = textEnd(content, tokenStart, tokenEnd);
+    }
+
+    /**
+     *
+     * @return the start of the current token (its prefix)
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     *
+     * @return the start of the text part of the current token
+     */
+    public int getTextStart() {
+        return this.textStart;
+    }
+
+    /**
+     *
+     * @return the end of the text part of the current token (the start of its suffix)
+     */
+    public int getTextEnd() {
+        return this.textEnd;
+    }
+
+    /**
+     *
+     * @return the end of the current token
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     *
+     * @return whether the current token has no character at all
+     */
+    public boolean isEmpty() {
+        return this.start == this.end;
+    }
+
+    /**
+     *
+     * @return a Word object for the current token, the same as Word.createWord() on its raw text
+     */
+    public Word toWord() {
+        return createWord(content, start, textStart, textEnd, end);
+    }
+
+    /**
+     *
+     * @param content
+     * @param start
+     * @param textStart
+     * @param textEnd
+     * @param end
+     * @return a Word object built from the offsets of a token
+     * @throws StringIndexOutOfBoundsException if textEnd is before textStart, like Word.createWord()
+     */
+    static Word createWord(CharSequence content, int start, int textStart, int textEnd, int end) {
+        checkToken(start, textStart, textEnd, end);
+        return new Word(content.subSequence(start, textStart).toString(),
+                content.subSequence(textStart, textEnd).toString(),
+                content.subSequence(textEnd, end).toString());
+    }
+
+    /**
+     *
+     * @param start
+     * @param textStart
+     * @param textEnd
+     * @param end
+     * @throws StringIndexOutOfBoundsException if textEnd is before textStart, like Word.createWord()
+     */
+    static void checkToken(int start, int textStart, int textEnd, int end) {
+        if (textEnd < textStart) {
+            throw new StringIndexOutOfBoundsException("begin " + (textStart - start) + ", end "
+                    + (textEnd - start) + ", length " + (end - start));
+        }
+    }
+
+    /**
+     *
+     * @param s
+     * @param start the start of the raw word
+     * @param end the end of the raw word
+     * @return the index of the first alphabetic character, start if there is none
+     */
+    static int textStart(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.isLetter(s.charAt(i))) {
+                return i;
+            }
+        }
+        return start;
+    }
+
+    /**
+     *
+     * @param s
+     * @param start the start of the raw word
+     * @param end the end of the raw word
+     * @return the end of the text part of the raw word, see Word.createWord()
+     */
+    static int textEnd(CharSequence s, int start, int end) {
+        // Find the index of the last alphabetic character, the first character is never checked
+        for (int i = end - 1; i > start; i--) {
+            if (Character.isLetter(s.charAt(i))) {
+                // if the character before the last letter is not a letter
+                if (i > start + 1 && !Character.isLetter(s.charAt(i - 1))) {
+                    // update the end position to be the position of that character
+                    return i - 1;
+                }
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
@@ -15,9 +15,10 @@ import java.util.Set;
 public class Word {
 
     /**
-     * A set of stop words loaded by the loadStopWords() method
+     * The stop words loaded by the loadStopWords() method as an immutable lookup table,
+     * replaced as a whole and only read through getStopWordTable()
      */
-    public static Set<String> stopWords;
+    private static volatile StopWords stopWordTable = StopWords.EMPTY;
 
     private String prefix;
     private String suffix;
@@ -40,7 +41,15 @@ public class Word {
      * @return whether a word is a keyword or not
      */
     boolean isKeyword() {
-        return !stopWords.contains(text.toLowerCase()) && prefix.isEmpty() && suffix.isEmpty();
+        return prefix.isEmpty() && suffix.isEmpty() && !stopWordTable.contains(text);
+    }
+
+    /**
+     *
+     * @return the current stop words, replaced as a whole by loadStopWords()
+     */
+    static StopWords getStopWordTable() {
+        return stopWordTable;
     }
 
     /**
@@ -98,42 +107,15 @@ public class Word {
      * @return a complete Word object from raw text
      */
     public static Word createWord(String rawText) {
-        String prefix = "";
-        String text = "";
-        String suffix = "";
-
         // Find the index of the first alphabetic character
-        int start = 0;
-        for (int i = 0; i < rawText.length(); i++) {
-            if (Character.isLetter(rawText.charAt(i))) {
-                start = i;
-                break;
-            }
-        }
-
-        // Extract the prefix
-        prefix = rawText.substring(0, start);
-
-        // Find the index of the last alphabetic character
-        int end = rawText.length();
-        for (int i = rawText.length() - 1; i > 0; i--) {
-            if (Character.isLetter(rawText.charAt(i))) {
-                end = i+1;
-                // if the character before the last letter is not a letter
-                if (i > 1 && !Character.isLetter(rawText.charAt(i-1))) {
-                    // update the end position to be the position of that character
-                    end = i-1; // need update
-                    break;
-                }
-                break;
-            }
-        }
-
-        // Extract the text
-        text = rawText.substring(start, end);
+        int start = Tokenizer.textStart(rawText, 0, rawText.length());
+        // Find the end of the text part, just after the last alphabetic character
+        int end = Tokenizer.textEnd(rawText, 0, rawText.length());
 
-        // Extract the suffix
-        suffix = rawText.substring(end);
+        // Extract the prefix, the text and the suffix
+        String prefix = rawText.substring(0, start);
+        String text = rawText.substring(start, end);
+        String suffix = rawText.substring(end);
 
         return new Word(prefix, text, suffix);
     }
@@ -141,13 +123,13 @@ public class Word {
     /**
      *
      * @param fileName
-     * @effects load the stop words into the set Word.stopWords from the file fileName.txt
+     * @effects load the stop words into the table of getStopWordTable() from the file fileName.txt
      * @return whether the stop words are loaded successfully or not
      * Checked
      */
     public static boolean loadStopWords(String fileName) {
-        // initialize the set of stop words as a HashSet -> not throwing NullPointerException
-        stopWords = new HashSet<>();
+        // collect the stop words in a local set, the current ones stay in use meanwhile
+        Set<String> words = new HashSet<>();
         // Scan file stopwords.txt
         File stopWordFile = new File("stopwords.txt");
         try {
@@ -156,16 +138,20 @@ public class Word {
             // loop through the file
             while (reader.hasNext()) {
                 // add words to set
-                String[] words = reader.nextLine().split("\\s+");
-                Word.stopWords.addAll(Arrays.asList(words));
+                String[] line = reader.nextLine().split("\\s+");
+                words.addAll(Arrays.asList(line));
             }
             // close reader
             reader.close();
+            // publish the new stop words at once, a concurrent query sees either the old or the new ones
+            stopWordTable = new StopWords(words);
             return true;
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
-        // if failed, return false
+        // if failed, there is no stop word
+        stopWordTable = StopWords.EMPTY;
+        // and return false
         return false;
     }
 